@@ -1,8 +1,19 @@
 
+import help.AspectTermStore;
 import help.ECNRun;
+import help.EntityCooccurrenceIndex;
+import help.EntityParagraphBuilder;
+import help.EntityTextStore;
+import help.IndexOptimizer;
+import help.LuceneHelper;
+import help.ParagraphTermStore;
 import make_entity_data_file.*;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 /**
  * Main method to run code.
  * @author Shubham Chatterjee
@@ -157,15 +168,134 @@ public class ProjectMain {
         }
     }
 
+    private static void printBuildModeArguments(@NotNull String type) {
+        switch (type) {
+            case "AspectTerms":
+                System.out.println("AspectTerms:");
+                System.out.println("  <catalogIndex>: Path to the catalog index file.");
+                System.out.println("  <outFile>: Path to the aspect term store (use with -DaspectTerms=<outFile>).");
+                break;
+            case "LeadText":
+                System.out.println("LeadText:");
+                System.out.println("  <entityIndex>: Path to the entity index file.");
+                System.out.println("  <outFile>: Path to the lead text store (use with -DleadTextStore=<outFile>).");
+                break;
+            case "EntityParagraphs":
+                System.out.println("EntityParagraphs:");
+                System.out.println("  <paraIndex>: Path to the paragraph index file.");
+                System.out.println("  <outFile>: Path to the entity paragraph file (the entityPassageFile/entityParaFile argument).");
+                break;
+            case "EntityCooccurrence":
+                System.out.println("EntityCooccurrence:");
+                System.out.println("  <paraIndex>: Path to the paragraph index file.");
+                System.out.println("  <outFile>: Path to the entity co-occurrence index (use with -DcooccurrenceIndex=<outFile>).");
+                break;
+            case "OptimizeIndex":
+                System.out.println("OptimizeIndex:");
+                System.out.println("  <index>: Path to the paragraph or catalog index file.");
+                System.out.println("  <outIndex>: Path to the optimized index (use it in place of <index>).");
+                break;
+            case "ParagraphTerms":
+                System.out.println("ParagraphTerms:");
+                System.out.println("  <paraIndex>: Path to the paragraph index file.");
+                System.out.println("  <stopWordsFile>: Path to the stop words file of the jobs.");
+                System.out.println("  <outFile>: Path to the paragraph term store (use with -DparagraphTerms=<outFile>).");
+                break;
+            default:
+                System.out.println("Unknown type: " + type);
+                break;
+        }
+    }
+
+    /**
+     * Build the offline data structures used by the other modes.
+     * @param type Data structure to build.
+     * @param args Arguments
+     */
+
+    private static void build(@NotNull String type, @NotNull String[] args) {
+        try {
+            switch (type) {
+                case "AspectTerms": {
+                    String catalogIndex = args[2];
+                    String outFile = args[3];
+                    AspectTermStore.build(LuceneHelper.createSearcher(catalogIndex, "bm25"), Paths.get(outFile));
+                    break;
+                }
+                case "LeadText": {
+                    String entityIndex = args[2];
+                    String outFile = args[3];
+                    EntityTextStore.build(LuceneHelper.createSearcher(entityIndex, "bm25"), "LeadText",
+                            Paths.get(outFile));
+                    break;
+                }
+                case "EntityParagraphs": {
+                    String paraIndex = args[2];
+                    String outFile = args[3];
+                    EntityParagraphBuilder.build(LuceneHelper.createSearcher(paraIndex, "bm25"), Paths.get(outFile));
+                    break;
+                }
+                case "EntityCooccurrence": {
+                    String paraIndex = args[2];
+                    String outFile = args[3];
+                    EntityCooccurrenceIndex.build(LuceneHelper.createSearcher(paraIndex, "bm25"), Paths.get(outFile));
+                    break;
+                }
+                case "OptimizeIndex": {
+                    String index = args[2];
+                    String outIndex = args[3];
+                    IndexOptimizer.optimize(Paths.get(index), Paths.get(outIndex));
+                    break;
+                }
+                case "ParagraphTerms": {
+                    String paraIndex = args[2];
+                    String stopWordsFile = args[3];
+                    String outFile = args[4];
+                    ParagraphTermStore.build(LuceneHelper.createSearcher(paraIndex, "bm25"),
+                            Files.readAllLines(Paths.get(stopWordsFile)), Paths.get(outFile));
+                    break;
+                }
+                default:
+                    System.err.println("ERROR! Type can be either (AspectTerms|LeadText|EntityParagraphs|EntityCooccurrence|OptimizeIndex|ParagraphTerms).");
+                    System.exit(-1);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
     public static void main(@NotNull String[] args) {
         if (args.length == 0 || args.length == 1 && args[0].equals("--help")) {
             // Print help message
             // Print help message
             System.out.println("Help:");
             System.out.println("Usage: java <JarFile>.jar <mode> <type> <arguments>");
-            System.out.println("Available modes: train, dev, test");
+            System.out.println("Available modes: train, dev, test, build");
             System.out.println("Available types: SupportPsg, LeadText, AspectCandidateSet, AspectSupportPsg, BM25Psg, ECNRun");
+            System.out.println("Available types for build: AspectTerms, LeadText, EntityParagraphs, EntityCooccurrence, OptimizeIndex, ParagraphTerms");
             System.out.println("Run the JAR file with <mode> <type> to see the arguments for the mode and type.");
+            System.out.println("JVM options (java -D<option>=<value> -jar ...):");
+            System.out.println("  demandLoad=true: Only load the queries, entity names and entity passages used by the job.");
+            System.out.println("  offHeap=true: Keep the query, entity name and entity passage tables outside the Java heap.");
+            System.out.println("  heapReport=true: Report the heap, direct buffer and GC cost of loading the job state (forces a full GC).");
+            System.out.println("  snapshot=<file>: Save the loaded job state to <file> and map it on later runs with the same inputs.");
+            System.out.println("  rankingMode=local|batched|global: Rank paragraphs per (query, entity), with one index per query, or in the paragraph index (default local).");
+            System.out.println("  prefetch=<n>: Read ahead the paragraphs of the next n entities of a query (local ranking mode, default 0).");
+            System.out.println("  prefetchThreads=<n>: Number of read-ahead threads (default 4).");
+            System.out.println("  aspectCacheSize=<n>: Maximum number of catalog aspects cached in memory (default 1000000).");
+            System.out.println("  aspectTerms=<file>: Rank the aspects of an entity with the term vectors built by the build mode.");
+            System.out.println("  leadTextStore=<file>: Read the lead text of entities from the store built by the build mode.");
+            System.out.println("  sortBufferPairs=<n>: Number of (entity, paragraph) pairs sorted in memory by build EntityParagraphs (default 8000000).");
+            System.out.println("  cooccurrenceIndex=<file>: Read the entities of paragraphs for ECN from the index built by the build mode.");
+            System.out.println("  paragraphTerms=<file>: Rank paragraphs and compute the RM3 terms from the term vectors built by the build mode.");
+            System.out.println("  ecnTopN=<n>: Keep the top n passages per (query, entity) in the ECN run (default 0: all).");
+            System.out.println("  runFormat=trec|binary: Format of the ECN run (default trec). Convert a binary run with help.RunWriter.");
+            System.out.println("  metrics=<prefix>: Write per-stage timers and counters to <prefix>.json and <prefix>.prom (Prometheus).");
+            System.out.println("  metricsInterval=<seconds>: How often the metrics files are written (default 60).");
+            System.out.println("  progressInterval=<seconds>: How often progress is printed in parallel mode (default 10).");
+            System.out.println("Flight recording: add -XX:StartFlightRecording=filename=<file>.jfr (or run jcmd <pid> JFR.start)");
+            System.out.println("  to record bert_er.Pair, RankDocuments, StoredFields and Output events for every entity pair.");
             return;
 
 
@@ -181,6 +311,9 @@ public class ProjectMain {
                 case "test":
                     printDevTestModeArguments(type);
                     break;
+                case "build":
+                    printBuildModeArguments(type);
+                    break;
                 default:
                     System.out.println("Unknown mode: " + mode);
                     break;
@@ -192,6 +325,11 @@ public class ProjectMain {
         String mode = args[0];
         String type = args[1];
 
+        if (mode.equals("build")) {
+            build(type, args);
+            return;
+        }
+
         switch (type) {
             case "SupportPsg":
                 if (mode.equals("train")) {
@@ -434,10 +572,7 @@ public class ProjectMain {
 
                     ECNRun ob = new ECNRun(paraIndex, entityPassageFile, entityRunFile, posOrNegEntityFile,
                             queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
-                    ob.doTask(ob.entities.keySet(), mode);
-                    System.out.print("Writing to run file.....");
-                    ob.writeRunFile(ob.runStrings, outFile);
-                    System.out.println("[Done].");
+                    ob.run(ob.entities.keySet(), mode, outFile);
                     System.out.println("Run file written at: " + outFile);
 
 
@@ -454,10 +589,7 @@ public class ProjectMain {
 
                     ECNRun ob = new ECNRun(paraIndex, entityPassageFile, entityRunFile,
                             queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
-                    ob.doTask(ob.entityRunMap.keySet(), mode);
-                    System.out.print("Writing to run file.....");
-                    ob.writeRunFile(ob.runStrings, outFile);
-                    System.out.println("[Done].");
+                    ob.run(ob.entityRunMap.keySet(), mode, outFile);
                     System.out.println("Run file written at: " + outFile);
 
                 }
@@ -0,0 +1,61 @@
+package benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Entry point of the benchmark jar.
+ * Accepts the usual JMH command line (e.g. a benchmark name regex, -f, -wi, -i) and always adds the GC profiler,
+ * so that allocation rates are reported next to the timings.
+ *
+ * Build with: mvn -P benchmark package
+ * Run with: java -jar target/bert_entity_ranking-benchmarks-jar-with-dependencies.jar [RankingBenchmark|EntityDataBenchmark|StoredFieldsBenchmark|IndexLayoutBenchmark]
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions cmdOptions;
+        try {
+            cmdOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(cmdOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Delete a directory created by a benchmark.
+     * @param dir Directory
+     */
+
+    static void deleteRecursively(@NotNull Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
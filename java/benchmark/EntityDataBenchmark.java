@@ -0,0 +1,154 @@
+package benchmark;
+
+import help.EcnKernel;
+import help.LuceneHelper;
+import help.RankingHelper;
+import make_entity_data_file.SupportPsg;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the entity description hot paths: parsing the entity links of a paragraph and scoring it in
+ * SupportPsg, ECN scoring of all the paragraphs of an entity (String based against EcnKernel), and reading an
+ * entity run file.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityDataBenchmark {
+
+    /**
+     * Gives the benchmarks access to the protected methods of SupportPsg.
+     */
+
+    public static class SupportPsgProbe extends SupportPsg {
+
+        public SupportPsgProbe(@NotNull SyntheticData data) {
+            super(data.getParaIndex().toString(), data.getEntityParaFile().toString(),
+                    data.getEntityRunFile().toString(), data.getQueriesFile().toString(),
+                    data.getEntitiesFile().toString(), data.getStopWordsFile().toString(), false);
+        }
+
+        public IndexSearcher searcher() {
+            return indexSearcher;
+        }
+
+        public List<String> entitiesInPara(@NotNull Document doc) {
+            return getEntitiesInPara(doc);
+        }
+
+        public double paraScore(@NotNull Document doc, Map<String, Double> freqMap) {
+            return getParaScore(doc, freqMap);
+        }
+
+        public Map<String, Double> distribution(@NotNull List<String> contextEntityList, Set<String> retEntitySet) {
+            return getDistribution(contextEntityList, retEntitySet);
+        }
+
+        public Map<String, Double> ecn(String entityId, @NotNull List<RankingHelper.ScoredDocument> paraList,
+                                       Set<String> retEntitySet) {
+            Map<String, Double> scoreMap = new HashMap<>();
+            EntityContextDocument d = createECD(entityId, paraList);
+            if (d != null) {
+                Map<String, Double> freqDist = getDistribution(d.getEntityList(), retEntitySet);
+                for (Document doc : d.getDocumentList()) {
+                    scoreMap.put(doc.get("Id"), getParaScore(doc, freqDist));
+                }
+            }
+            return scoreMap;
+        }
+    }
+
+    private Path dir;
+    private SyntheticData data;
+    private SupportPsgProbe supportPsg;
+    private List<Document> documentList;
+    private Map<String, Double> freqMap;
+    private String entityId;
+    private List<RankingHelper.ScoredDocument> rankedParaList;
+    private Set<String> retEntitySet;
+    private EcnKernel kernel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bert-er-benchmark");
+        data = new SyntheticData(dir, 5000, 1000, 200, 100, 100, 42L);
+        data.generate();
+
+        supportPsg = new SupportPsgProbe(data);
+
+        // The support passages of the most popular entity, scored against the entities retrieved for a query
+        Map.Entry<String, List<String>> entityParas = data.getEntityParas().entrySet().iterator().next();
+        entityId = entityParas.getKey();
+        documentList = LuceneHelper.toLuceneDocList(entityParas.getValue(), supportPsg.searcher());
+        rankedParaList = new ArrayList<>();
+        for (Document doc : documentList) {
+            rankedParaList.add(new RankingHelper.ScoredDocument(doc.get("Id"), doc, 1.0));
+        }
+
+        List<String> contextEntityList = new ArrayList<>();
+        for (Document doc : documentList) {
+            contextEntityList.addAll(supportPsg.entitiesInPara(doc));
+        }
+        retEntitySet = supportPsg.entityRunMap.values().iterator().next().keySet();
+        freqMap = supportPsg.distribution(contextEntityList, retEntitySet);
+
+        // As for the second and later entities of a query, whose paragraphs are mostly parsed already
+        kernel = new EcnKernel("benchmark", retEntitySet);
+        kernel.score(entityId, rankedParaList, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        supportPsg.searcher().getIndexReader().close();
+        BenchmarkMain.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void getEntitiesInPara(Blackhole bh) {
+        for (Document doc : documentList) {
+            bh.consume(supportPsg.entitiesInPara(doc));
+        }
+    }
+
+    @Benchmark
+    public void getParaScore(Blackhole bh) {
+        for (Document doc : documentList) {
+            bh.consume(supportPsg.paraScore(doc, freqMap));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Double> ecnStrings() {
+        return supportPsg.ecn(entityId, rankedParaList, retEntitySet);
+    }
+
+    @Benchmark
+    public void ecnKernel(Blackhole bh) {
+        int numDocs = kernel.score(entityId, rankedParaList, true);
+        for (int i = 0; i < numDocs; i++) {
+            bh.consume(kernel.getScore(i));
+        }
+    }
+
+    @Benchmark
+    public Map<String, LinkedHashMap<String, Double>> readRunFile() {
+        return supportPsg.readRunFile(data.getEntityRunFile().toString());
+    }
+}
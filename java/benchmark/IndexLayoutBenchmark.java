@@ -0,0 +1,86 @@
+package benchmark;
+
+import help.IndexOptimizer;
+import help.LuceneHelper;
+import help.RankingHelper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the paragraph index as generated (several segments, unsorted) against the same index rewritten by
+ * IndexOptimizer: loading the paragraphs of an entity by id, and ranking them in the index (rankingMode=global),
+ * reading the ids of the hits as CandidatePsg does.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexLayoutBenchmark {
+
+    @Param({"original", "optimized"})
+    public String layout;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private Path dir;
+    private IndexSearcher searcher;
+    private List<String> paraIds;
+    private BooleanQuery query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bert-er-benchmark");
+        SyntheticData data = new SyntheticData(dir, 50000, 5000, 10, 100, 100, 42L);
+        data.generate();
+        Path index = data.getParaIndex();
+        if (layout.equals("optimized")) {
+            index = dir.resolve("optimized");
+            IndexOptimizer.optimize(data.getParaIndex(), index);
+        }
+        searcher = LuceneHelper.createSearcher(index.toString(), "bm25");
+
+        // Random ids, as in an entity's paragraph list
+        List<String> allIds = new ArrayList<>(data.getParaIds());
+        Collections.shuffle(allIds, new Random(42L));
+        paraIds = new ArrayList<>(allIds.subList(0, Math.min(batchSize, allIds.size())));
+
+        String queryStr = data.getQueryNames().values().iterator().next();
+        String entityStr = data.getEntityNames().values().iterator().next();
+        query = RankingHelper.toBooleanQuery(queryStr, entityStr);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        searcher.getIndexReader().close();
+        BenchmarkMain.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Document[] getDocuments() {
+        return LuceneHelper.getDocuments(paraIds, searcher);
+    }
+
+    @Benchmark
+    public void rankInIndex(Blackhole bh) {
+        RankingHelper.RankedDocuments ranked = RankingHelper.rank(query, paraIds, searcher, paraIds.size());
+        for (int rank = 0; rank < ranked.size(); rank++) {
+            bh.consume(ranked.getDocId(rank));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package benchmark;
+
+import help.AspectTermStore;
+import help.LuceneHelper;
+import help.ParagraphTermStore;
+import help.RankingHelper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Checks that the term stores rank as the in-memory index does.
+ * Generates a small synthetic data set (see SyntheticData) and, for every (query, entity) pair:
+ * (1) ranks the aspects of the entity with AspectTermStore.top() and with RankingHelper.rankDocuments(), for the query
+ * and entity terms and for the RM3 query of the entity's paragraphs, and compares the top aspects;
+ * (2) ranks the paragraphs of the entity with ParagraphTermStore.rankWithPRF() and as CandidatePsg.rankDocsForQuery()
+ * does (RankingHelper.toBooleanQueryWithPRF() then rankDocuments()), and compares the ids and scores of all the hits.
+ * Every pair that differs is printed. Exits with status 1 if there is any difference.
+ *
+ * Usage: java -cp <benchmarks jar> benchmark.LocalScoringCheck <workDir> [numParas] [numEntities] [numQueries]
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class LocalScoringCheck {
+
+    private static final int PARAS_PER_ENTITY = 50;
+    private static final int ENTITIES_PER_QUERY = 50;
+    private static final int RANK_DEPTH = 1000;
+
+    private final SyntheticData data;
+    private final IndexSearcher paraSearcher;
+    private final IndexSearcher catalogSearcher;
+    private final AspectTermStore aspectTerms;
+    private final ParagraphTermStore paragraphTerms;
+    private final Map<String, List<String>> entityAspects = new LinkedHashMap<>();
+    private long checked = 0;
+    private long differences = 0;
+
+    public LocalScoringCheck(@NotNull SyntheticData data, @NotNull Path workDir) throws IOException {
+        this.data = data;
+        this.paraSearcher = LuceneHelper.createSearcher(data.getParaIndex().toString(), "bm25");
+        this.catalogSearcher = LuceneHelper.createSearcher(data.getCatalogIndex().toString(), "bm25");
+
+        Path aspectTermsFile = workDir.resolve("aspect_terms.bin");
+        AspectTermStore.build(catalogSearcher, aspectTermsFile);
+        this.aspectTerms = AspectTermStore.open(aspectTermsFile);
+
+        Path paragraphTermsFile = workDir.resolve("paragraph_terms.bin");
+        ParagraphTermStore.build(paraSearcher, SyntheticData.STOP_WORDS, paragraphTermsFile);
+        this.paragraphTerms = ParagraphTermStore.open(paragraphTermsFile, SyntheticData.STOP_WORDS);
+
+        // The aspects of an entity are "<entity id>/section_<n>"
+        for (LeafReaderContext leaf : catalogSearcher.getIndexReader().leaves()) {
+            for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                String aspectId = leaf.reader().document(doc).get("Id");
+                String entityId = aspectId.substring(0, aspectId.lastIndexOf('/'));
+                entityAspects.computeIfAbsent(entityId, k -> new ArrayList<>()).add(aspectId);
+            }
+        }
+    }
+
+    /**
+     * Rank the aspects of an entity with the store and with an in-memory index.
+     */
+
+    private void checkAspects(@NotNull String pair, @NotNull BooleanQuery query, @NotNull List<String> aspectIds) {
+        Integer top = aspectTerms.top(query, aspectIds);
+        String storeTop = top == null ? "<not ranked>" : top < 0 ? null : aspectIds.get(top);
+        List<RankingHelper.ScoredDocument> ranked = RankingHelper.rankDocuments(query,
+                LuceneHelper.toLuceneDocList(aspectIds, catalogSearcher), 1);
+        String indexTop = ranked.isEmpty() ? null : ranked.get(0).getDocId();
+        checked++;
+        if (!Objects.equals(storeTop, indexTop)) {
+            differences++;
+            System.out.println("Top aspect differs for " + pair + ": store=" + storeTop + " index=" + indexTop);
+        }
+    }
+
+    /**
+     * Rank the paragraphs of an entity with the store and with an in-memory index.
+     */
+
+    private void checkParagraphs(@NotNull String pair,
+                                 @NotNull String queryStr,
+                                 @NotNull String entityStr,
+                                 @NotNull List<String> paraIds,
+                                 @NotNull List<Document> paraDocs) {
+        RankingHelper.RankedDocuments store = paragraphTerms.rankWithPRF(queryStr, entityStr, paraIds, paraSearcher,
+                RANK_DEPTH);
+        BooleanQuery expandedQuery = RankingHelper.toBooleanQueryWithPRF(queryStr, entityStr, paraDocs,
+                SyntheticData.STOP_WORDS);
+        List<RankingHelper.ScoredDocument> index = expandedQuery == null
+                ? new ArrayList<>()
+                : RankingHelper.rankDocuments(expandedQuery, paraDocs, RANK_DEPTH);
+        checked++;
+        if (store == null) {
+            differences++;
+            System.out.println("Paragraphs not ranked by the store for " + pair);
+            return;
+        }
+        if (store.size() != index.size()) {
+            differences++;
+            System.out.println("Number of hits differs for " + pair + ": store=" + store.size() + " index="
+                    + index.size());
+            return;
+        }
+        for (int rank = 0; rank < store.size(); rank++) {
+            String storeId = store.getDocId(rank);
+            String indexId = index.get(rank).getDocId();
+            float indexScore = (float) index.get(rank).getScore();
+            if (!Objects.equals(storeId, indexId) || Float.compare(store.getScore(rank), indexScore) != 0) {
+                differences++;
+                System.out.println("Hit " + rank + " differs for " + pair + ": store=" + storeId + " ("
+                        + store.getScore(rank) + ") index=" + indexId + " (" + indexScore + ")");
+                return;
+            }
+        }
+    }
+
+    public void check() {
+        for (Map.Entry<String, String> query : data.getQueryNames().entrySet()) {
+            int entities = 0;
+            for (Map.Entry<String, List<String>> entity : data.getEntityParas().entrySet()) {
+                List<String> aspectIds = entityAspects.get(entity.getKey());
+                if (entity.getValue().isEmpty() || aspectIds == null) {
+                    continue;
+                }
+                if (entities++ == ENTITIES_PER_QUERY) {
+                    break;
+                }
+                String pair = query.getKey() + " " + entity.getKey();
+                String entityStr = data.getEntityNames().get(entity.getKey());
+                checkAspects(pair, RankingHelper.toBooleanQuery(query.getValue(), entityStr), aspectIds);
+
+                List<Document> paraDocs = LuceneHelper.toLuceneDocList(entity.getValue(), paraSearcher);
+                checkParagraphs(pair, query.getValue(), entityStr, entity.getValue(), paraDocs);
+
+                // The RM3 query has weighted terms, some of them repeated
+                BooleanQuery expandedQuery = RankingHelper.toBooleanQueryWithPRF(query.getValue(), entityStr,
+                        paraDocs, SyntheticData.STOP_WORDS);
+                if (expandedQuery != null) {
+                    checkAspects(pair + " (RM3)", expandedQuery, aspectIds);
+                }
+            }
+        }
+        System.out.println("Checked " + checked + " rankings: " + differences + " differences.");
+    }
+
+    public boolean passed() {
+        return differences == 0;
+    }
+
+    public static void main(@NotNull String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: LocalScoringCheck <workDir> [numParas] [numEntities] [numQueries]");
+            return;
+        }
+        Path workDir = Paths.get(args[0]);
+        int numParas = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int numEntities = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int numQueries = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        Files.createDirectories(workDir);
+
+        System.out.print("Generating synthetic data...");
+        SyntheticData data = new SyntheticData(workDir.resolve("data"), numParas, numEntities, numQueries,
+                PARAS_PER_ENTITY, ENTITIES_PER_QUERY, 42L);
+        data.generate();
+        System.out.println("[Done].");
+
+        LocalScoringCheck check = new LocalScoringCheck(data, workDir);
+        check.check();
+        if (!check.passed()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import help.LuceneHelper;
+import help.RankingHelper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the ranking hot paths in RankingHelper and LuceneHelper.
+ * A synthetic paragraph index is generated at setup; each invocation works on the paragraphs of one
+ * (query, entity) pair, as CandidatePsg.getTopDocForEntity does.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingBenchmark {
+
+    /** Number of paragraphs to rank per (query, entity) pair. */
+    @Param({"20", "100"})
+    public int numParas;
+
+    private Path dir;
+    private IndexSearcher searcher;
+    private List<String> paraList;
+    private List<Document> documentList;
+    private String queryStr;
+    private String entityStr;
+    private BooleanQuery query;
+    private List<RankingHelper.ScoredDocument> rankedDocList;
+    private String paraText;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bert-er-benchmark");
+        SyntheticData data = new SyntheticData(dir, 5000, 1000, 20, 100, 50, 42L);
+        data.generate();
+
+        searcher = LuceneHelper.createSearcher(data.getParaIndex().toString(), "bm25");
+
+        List<String> paraIds = new ArrayList<>(data.getParaIds());
+        Collections.shuffle(paraIds, new Random(42L));
+        paraList = new ArrayList<>(paraIds.subList(0, numParas));
+        documentList = LuceneHelper.toLuceneDocList(paraList, searcher);
+
+        queryStr = data.getQueryNames().values().iterator().next();
+        entityStr = data.getEntityNames().values().iterator().next();
+        query = RankingHelper.toBooleanQuery(queryStr, entityStr);
+        rankedDocList = RankingHelper.rankDocuments(query, documentList, 100);
+        paraText = data.getParaTexts().get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        searcher.getIndexReader().close();
+        BenchmarkMain.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<RankingHelper.ScoredDocument> rankDocuments() {
+        return RankingHelper.rankDocuments(query, documentList, 100);
+    }
+
+    @Benchmark
+    public BooleanQuery toBooleanQueryWithPRF() {
+        return RankingHelper.toBooleanQueryWithPRF(queryStr, entityStr, documentList, SyntheticData.STOP_WORDS);
+    }
+
+    @Benchmark
+    public Map<String, Double> getTermDistribution() {
+        return RankingHelper.getTermDistribution(rankedDocList, SyntheticData.STOP_WORDS);
+    }
+
+    @Benchmark
+    public List<String> preProcess() {
+        return RankingHelper.preProcess(paraText, SyntheticData.STOP_WORDS);
+    }
+
+    @Benchmark
+    public List<Document> toLuceneDocList() {
+        return LuceneHelper.toLuceneDocList(paraList, searcher);
+    }
+}
@@ -0,0 +1,158 @@
+package benchmark;
+
+import make_entity_data_file.BM25Psg;
+import make_entity_data_file.CandidatePsg;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compares the paragraph ranking modes of CandidatePsg.
+ * Generates a synthetic data set (see SyntheticData) and runs BM25Psg, which keeps the top ranked paragraph of
+ * every (query, entity) pair, once with every ranking mode. For every mode it reports the task time, the speedup
+ * against the LOCAL (per-entity) mode and the fraction of pairs whose top paragraph agrees with the LOCAL mode.
+ * The report is also written to ranking_modes.tsv in the work directory.
+ *
+ * Usage: java -cp <benchmarks jar> benchmark.RankingModeReport <workDir> <numParas> <numEntities> <numQueries>
+ *        <parallel>
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class RankingModeReport {
+
+    private static final int PARAS_PER_ENTITY = 100;
+    private static final int ENTITIES_PER_QUERY = 100;
+    private static final int WARM_UP_QUERIES = 5;
+
+    private final SyntheticData data;
+    private final boolean parallel;
+
+    public RankingModeReport(@NotNull SyntheticData data, boolean parallel) {
+        this.data = data;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Run BM25Psg with a ranking mode.
+     * @param rankingMode Ranking mode
+     * @param querySet Queries to run.
+     * @param times Task time in nanoseconds, per mode.
+     * @return Map of query_id --> (entity_id --> top para_id)
+     */
+
+    @NotNull
+    private Map<String, Map<String, String>> run(@NotNull CandidatePsg.RankingMode rankingMode,
+                                                 @NotNull Set<String> querySet,
+                                                 @NotNull Map<CandidatePsg.RankingMode, Long> times) {
+        BM25Psg ob = new BM25Psg(data.getParaIndex().toString(), data.getEntityParaFile().toString(),
+                data.getEntityRunFile().toString(), data.getQueriesFile().toString(),
+                data.getEntitiesFile().toString(), data.getStopWordsFile().toString(), "test", parallel);
+        ob.setRankingMode(rankingMode);
+        long start = System.nanoTime();
+        ob.doTask(querySet, "test");
+        times.put(rankingMode, System.nanoTime() - start);
+
+        Map<String, Map<String, String>> topParas = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> query : ob.entityDataMap.entrySet()) {
+            Map<String, String> entityTopPara = new HashMap<>();
+            for (Map.Entry<String, String> entity : query.getValue().entrySet()) {
+                try {
+                    entityTopPara.put(entity.getKey(), new JSONObject(entity.getValue()).getString("para_id"));
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+            topParas.put(query.getKey(), entityTopPara);
+        }
+        return topParas;
+    }
+
+    /**
+     * Fraction of the (query, entity) pairs of the reference with the same top paragraph in the other run.
+     */
+
+    private static double agreement(@NotNull Map<String, Map<String, String>> reference,
+                                    @NotNull Map<String, Map<String, String>> other) {
+        long pairs = 0, agree = 0;
+        for (Map.Entry<String, Map<String, String>> query : reference.entrySet()) {
+            Map<String, String> otherQuery = other.getOrDefault(query.getKey(), Collections.emptyMap());
+            for (Map.Entry<String, String> entity : query.getValue().entrySet()) {
+                pairs++;
+                if (entity.getValue().equals(otherQuery.get(entity.getKey()))) {
+                    agree++;
+                }
+            }
+        }
+        return pairs == 0 ? 1.0 : (double) agree / pairs;
+    }
+
+    @NotNull
+    public List<String> report() {
+        Set<String> querySet = data.getQueryNames().keySet();
+        Set<String> warmUp = new LinkedHashSet<>(new ArrayList<>(querySet).subList(0,
+                Math.min(WARM_UP_QUERIES, querySet.size())));
+        Map<CandidatePsg.RankingMode, Long> times = new EnumMap<>(CandidatePsg.RankingMode.class);
+
+        for (CandidatePsg.RankingMode rankingMode : CandidatePsg.RankingMode.values()) {
+            run(rankingMode, warmUp, new EnumMap<>(CandidatePsg.RankingMode.class));
+        }
+
+        Map<CandidatePsg.RankingMode, Map<String, Map<String, String>>> results = new EnumMap<>(CandidatePsg.RankingMode.class);
+        for (CandidatePsg.RankingMode rankingMode : CandidatePsg.RankingMode.values()) {
+            System.out.println("Running " + rankingMode + "...");
+            results.put(rankingMode, run(rankingMode, querySet, times));
+        }
+
+        List<String> report = new ArrayList<>();
+        report.add("mode\ttask_s\tspeedup_vs_local\ttop1_agreement_vs_local");
+        Map<String, Map<String, String>> local = results.get(CandidatePsg.RankingMode.LOCAL);
+        long localTime = times.get(CandidatePsg.RankingMode.LOCAL);
+        for (CandidatePsg.RankingMode rankingMode : CandidatePsg.RankingMode.values()) {
+            long time = times.get(rankingMode);
+            report.add(String.format("%s\t%.2f\t%.2f\t%.4f",
+                    rankingMode,
+                    time / 1e9,
+                    (double) localTime / time,
+                    agreement(local, results.get(rankingMode))));
+        }
+        return report;
+    }
+
+    public static void main(@NotNull String[] args) throws IOException {
+        if (args.length < 5) {
+            System.out.println("Usage: RankingModeReport <workDir> <numParas> <numEntities> <numQueries> <parallel>");
+            return;
+        }
+        Path workDir = Paths.get(args[0]);
+        int numParas = Integer.parseInt(args[1]);
+        int numEntities = Integer.parseInt(args[2]);
+        int numQueries = Integer.parseInt(args[3]);
+        boolean parallel = args[4].equals("true");
+
+        System.out.print("Generating synthetic data...");
+        SyntheticData data = new SyntheticData(workDir.resolve("data"), numParas, numEntities, numQueries,
+                PARAS_PER_ENTITY, ENTITIES_PER_QUERY, 42L);
+        data.generate();
+        System.out.println("[Done].");
+
+        List<String> report = new RankingModeReport(data, parallel).report();
+
+        try (BufferedWriter out = Files.newBufferedWriter(workDir.resolve("ranking_modes.tsv"), StandardCharsets.UTF_8)) {
+            for (String line : report) {
+                System.out.println(line);
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import help.LuceneHelper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for loading a batch of paragraphs by id: one TermQuery and one stored document per id, in the order of
+ * the ids, against LuceneHelper.getDocuments(), which resolves all ids first and reads the stored fields in docID
+ * order. The batch size is that of the paragraphs of one entity (100) and of all candidate entities of a query.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoredFieldsBenchmark {
+
+    @Param({"100", "2000"})
+    public int batchSize;
+
+    private Path dir;
+    private IndexSearcher searcher;
+    private List<String> paraIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bert-er-benchmark");
+        SyntheticData data = new SyntheticData(dir, 50000, 5000, 10, 100, 100, 42L);
+        data.generate();
+        searcher = new IndexSearcher(DirectoryReader.open(FSDirectory.open(data.getParaIndex())));
+
+        // Random ids, as in an entity's paragraph list or a passage run
+        List<String> allIds = new ArrayList<>(data.getParaIds());
+        Collections.shuffle(allIds, new Random(42L));
+        paraIds = new ArrayList<>(allIds.subList(0, Math.min(batchSize, allIds.size())));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        searcher.getIndexReader().close();
+        BenchmarkMain.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void searchIndexPerId(Blackhole bh) throws IOException, ParseException {
+        for (String paraId : paraIds) {
+            bh.consume(LuceneHelper.searchIndex("Id", paraId, searcher));
+        }
+    }
+
+    @Benchmark
+    public Document[] getDocuments() {
+        return LuceneHelper.getDocuments(paraIds, searcher);
+    }
+}
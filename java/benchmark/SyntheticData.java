@@ -0,0 +1,365 @@
+package benchmark;
+
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generates a synthetic data set in the layout used by the entity data classes: an aspect-linked paragraph index
+ * with "Id", "Text" and "Entities" fields, a catalog (aspect) index, an entity index with lead texts, the entity to
+ * passage TSV, the query and entity name TSVs, an entity run, a passage run and a stop word list.
+ * Word and entity frequencies follow a Zipf distribution, and the same seed always produces the same data, so the
+ * benchmarks need no network or external data.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class SyntheticData {
+
+    private static final int ASPECTS_PER_ENTITY = 4;
+
+    public static final List<String> STOP_WORDS = Arrays.asList("a", "an", "and", "are", "as", "at", "be", "by",
+            "for", "from", "in", "is", "it", "of", "on", "or", "that", "the", "to", "was", "with");
+
+    private final Path dir;
+    private final int numParas;
+    private final int numEntities;
+    private final int numQueries;
+    private final int parasPerEntity;
+    private final int entitiesPerQuery;
+    private final int parasPerQuery = 100;
+    private final Random random;
+    private final Zipf words;
+    private final Zipf entities;
+
+    private final List<String> paraIds = new ArrayList<>();
+    private final List<String> paraTexts = new ArrayList<>();
+    private final Map<String, String> queryNames = new LinkedHashMap<>();
+    private final Map<String, String> entityNames = new LinkedHashMap<>();
+    private final Map<String, List<String>> entityParas = new LinkedHashMap<>();
+
+    public SyntheticData(@NotNull Path dir,
+                         int numParas,
+                         int numEntities,
+                         int numQueries,
+                         int parasPerEntity,
+                         int entitiesPerQuery,
+                         long seed) {
+        this.dir = dir;
+        this.numParas = numParas;
+        this.numEntities = numEntities;
+        this.numQueries = numQueries;
+        this.parasPerEntity = parasPerEntity;
+        this.entitiesPerQuery = entitiesPerQuery;
+        this.random = new Random(seed);
+        this.words = new Zipf(5000, 1.1);
+        this.entities = new Zipf(numEntities, 1.0);
+    }
+
+    /**
+     * Write the data set to the directory.
+     * @throws IOException If the files or the index cannot be written.
+     */
+
+    public void generate() throws IOException {
+        Files.createDirectories(dir);
+
+        for (int e = 0; e < numEntities; e++) {
+            entityNames.put(entityId(e), phrase(1 + random.nextInt(3)));
+            entityParas.put(entityId(e), new ArrayList<>());
+        }
+        for (int q = 0; q < numQueries; q++) {
+            queryNames.put(queryId(q), phrase(2 + random.nextInt(4)));
+        }
+
+        try (IndexWriter iw = new IndexWriter(FSDirectory.open(getParaIndex()),
+                new IndexWriterConfig(new EnglishAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE))) {
+            for (int p = 0; p < numParas; p++) {
+                String paraId = String.format("para_%07d", p);
+                String text = sentence(40 + random.nextInt(80));
+                StringBuilder annotations = new StringBuilder();
+                Set<String> linked = new LinkedHashSet<>();
+                int numLinks = 1 + random.nextInt(6);
+                for (int i = 0; i < numLinks; i++) {
+                    linked.add(entityId(entities.sample(random)));
+                }
+                for (String entityId : linked) {
+                    annotations.append(annotation(entityId)).append('\n');
+                    List<String> paras = entityParas.get(entityId);
+                    if (paras.size() < parasPerEntity) {
+                        paras.add(paraId);
+                    }
+                }
+
+                Document doc = new Document();
+                doc.add(new StringField("Id", paraId, Field.Store.YES));
+                doc.add(new TextField("Text", text, Field.Store.YES));
+                doc.add(new StoredField("Entities", annotations.toString()));
+                iw.addDocument(doc);
+
+                paraIds.add(paraId);
+                paraTexts.add(text);
+            }
+            iw.commit();
+        }
+
+        // Catalog index: every entity has ASPECTS_PER_ENTITY aspects, referenced by the paragraph annotations
+        try (IndexWriter iw = new IndexWriter(FSDirectory.open(getCatalogIndex()),
+                new IndexWriterConfig(new EnglishAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE))) {
+            for (String entityId : entityNames.keySet()) {
+                for (int a = 0; a < ASPECTS_PER_ENTITY; a++) {
+                    Document doc = new Document();
+                    doc.add(new StringField("Id", aspectId(entityId, a), Field.Store.YES));
+                    doc.add(new TextField("Text", sentence(30 + random.nextInt(60)), Field.Store.YES));
+                    iw.addDocument(doc);
+                }
+            }
+            iw.commit();
+        }
+
+        // Entity index with the lead text of every entity
+        try (IndexWriter iw = new IndexWriter(FSDirectory.open(getEntityIndex()),
+                new IndexWriterConfig(new EnglishAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE))) {
+            for (Map.Entry<String, String> entity : entityNames.entrySet()) {
+                Document doc = new Document();
+                doc.add(new StringField("Id", entity.getKey(), Field.Store.YES));
+                doc.add(new StoredField("LeadText", entity.getValue() + " " + sentence(40 + random.nextInt(60))));
+                iw.addDocument(doc);
+            }
+            iw.commit();
+        }
+
+        writeLines(getStopWordsFile(), STOP_WORDS);
+        writeTsv(getQueriesFile(), queryNames);
+        writeTsv(getEntitiesFile(), entityNames);
+
+        Map<String, String> entityParaJson = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : entityParas.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                try {
+                    entityParaJson.put(entry.getKey(),
+                            new JSONObject().put("paragraphs", new JSONArray(entry.getValue())).toString());
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        writeTsv(getEntityParaFile(), entityParaJson);
+
+        List<String> run = new ArrayList<>();
+        for (String queryId : queryNames.keySet()) {
+            Set<Integer> ranked = new LinkedHashSet<>();
+            int target = Math.min(entitiesPerQuery, numEntities);
+            for (int attempts = 0; ranked.size() < target; attempts++) {
+                // Fall back to uniform sampling once the popular entities have all been drawn
+                ranked.add(attempts < 20 * target ? entities.sample(random) : random.nextInt(numEntities));
+            }
+            int rank = 1;
+            for (int e : ranked) {
+                run.add(queryId + " Q0 " + entityId(e) + " " + rank + " " + (entitiesPerQuery - rank + 1) + " synthetic");
+                rank++;
+            }
+        }
+        writeLines(getEntityRunFile(), run);
+
+        List<String> psgRun = new ArrayList<>();
+        for (String queryId : queryNames.keySet()) {
+            Set<Integer> ranked = new LinkedHashSet<>();
+            while (ranked.size() < Math.min(parasPerQuery, numParas)) {
+                ranked.add(random.nextInt(numParas));
+            }
+            int rank = 1;
+            for (int p : ranked) {
+                psgRun.add(queryId + " Q0 " + paraIds.get(p) + " " + rank + " " + (parasPerQuery - rank + 1) + " synthetic");
+                rank++;
+            }
+        }
+        writeLines(getPassageRunFile(), psgRun);
+    }
+
+    @NotNull
+    private String annotation(String entityId) {
+        try {
+            return new JSONObject()
+                    .put("linkPageId", entityId)
+                    .put("aspect", aspectId(entityId, random.nextInt(ASPECTS_PER_ENTITY)))
+                    .toString();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return "";
+        }
+    }
+
+    @NotNull
+    private String phrase(int numWords) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            sb.append(i == 0 ? "" : " ").append(word(words.sample(random)));
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    private String sentence(int numWords) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            if (random.nextInt(4) == 0) {
+                sb.append(STOP_WORDS.get(random.nextInt(STOP_WORDS.size())));
+            } else {
+                sb.append(word(words.sample(random)));
+            }
+            if (random.nextInt(12) == 0) {
+                sb.append(random.nextBoolean() ? "," : ".");
+            }
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    private static String word(int rank) {
+        // Pronounceable, analyzer-stable tokens: "ba", "beko", ...
+        final String consonants = "bdfgklmnprstvz";
+        final String vowels = "aeiou";
+        StringBuilder sb = new StringBuilder();
+        int n = rank + 1;
+        while (n > 0) {
+            sb.append(consonants.charAt(n % consonants.length()));
+            n /= consonants.length();
+            sb.append(vowels.charAt(n % vowels.length()));
+            n /= vowels.length();
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    private static String aspectId(String entityId, int aspect) {
+        return entityId + "/section_" + aspect;
+    }
+
+    @NotNull
+    private static String entityId(int e) {
+        return String.format("enwiki:Entity_%06d", e);
+    }
+
+    @NotNull
+    private static String queryId(int q) {
+        return String.format("enwiki:Query_%04d", q);
+    }
+
+    private static void writeTsv(Path file, @NotNull Map<String, String> map) throws IOException {
+        List<String> lines = new ArrayList<>(map.size());
+        map.forEach((k, v) -> lines.add(k + "\t" + v));
+        writeLines(file, lines);
+    }
+
+    private static void writeLines(Path file, @NotNull List<String> lines) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Samples ranks 0..n-1 from a Zipf distribution with the given exponent.
+     */
+
+    public static class Zipf {
+        private final double[] cdf;
+
+        public Zipf(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        public int sample(@NotNull Random random) {
+            int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+        }
+    }
+
+    public Path getParaIndex() {
+        return dir.resolve("paragraph.index");
+    }
+
+    public Path getCatalogIndex() {
+        return dir.resolve("catalog.index");
+    }
+
+    public Path getEntityIndex() {
+        return dir.resolve("entity.index");
+    }
+
+    public Path getPassageRunFile() {
+        return dir.resolve("passage.run");
+    }
+
+    public Path getEntityParaFile() {
+        return dir.resolve("entity_paragraphs.tsv");
+    }
+
+    public Path getQueriesFile() {
+        return dir.resolve("queries.tsv");
+    }
+
+    public Path getEntitiesFile() {
+        return dir.resolve("entity_names.tsv");
+    }
+
+    public Path getEntityRunFile() {
+        return dir.resolve("entity.run");
+    }
+
+    public Path getStopWordsFile() {
+        return dir.resolve("stop_words.txt");
+    }
+
+    public List<String> getParaIds() {
+        return paraIds;
+    }
+
+    public List<String> getParaTexts() {
+        return paraTexts;
+    }
+
+    public Map<String, String> getQueryNames() {
+        return queryNames;
+    }
+
+    public Map<String, String> getEntityNames() {
+        return entityNames;
+    }
+
+    public Map<String, List<String>> getEntityParas() {
+        return entityParas;
+    }
+}
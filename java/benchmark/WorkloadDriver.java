@@ -0,0 +1,272 @@
+package benchmark;
+
+import help.ECNRun;
+import make_entity_data_file.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * End-to-end throughput benchmark.
+ * Generates a synthetic data set (see SyntheticData) and runs each ProjectMain type against it in test mode, one
+ * after the other in this JVM. For every type it reports the load time, queries and (query, entity) pairs per
+ * second per core, p50/p99 latency per pair and peak heap (sampled every 10 ms). The report is also written to
+ * throughput.tsv in the work directory.
+ *
+ * Usage: java -cp <benchmarks jar> benchmark.WorkloadDriver <workDir> <numParas> <numEntities> <numQueries>
+ *        <parallel> [type ...]
+ * Types: SupportPsg, LeadText, AspectCandidateSet, AspectSupportPsg, BM25Psg, ECNRun (default: all).
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class WorkloadDriver {
+
+    private static final List<String> ALL_TYPES = Arrays.asList("SupportPsg", "LeadText", "AspectCandidateSet",
+            "AspectSupportPsg", "BM25Psg", "ECNRun");
+
+    private static final int PARAS_PER_ENTITY = 100;
+    private static final int ENTITIES_PER_QUERY = 100;
+    private static final int TAKE_K_DOCS = 100;
+    private static final long MB = 1024 * 1024;
+
+    private final SyntheticData data;
+    private final Path outDir;
+    private final boolean parallel;
+
+    public WorkloadDriver(@NotNull SyntheticData data, @NotNull Path outDir, boolean parallel) {
+        this.data = data;
+        this.outDir = outDir;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Result of running one type.
+     */
+
+    public static class Result {
+        final String type;
+        final long loadNanos;
+        final long taskNanos;
+        final int queries;
+        final long pairs;
+        final long p50Nanos;
+        final long p99Nanos;
+        final long peakHeap;
+
+        Result(String type, long loadNanos, long taskNanos, int queries, long pairs, long p50Nanos, long p99Nanos,
+               long peakHeap) {
+            this.type = type;
+            this.loadNanos = loadNanos;
+            this.taskNanos = taskNanos;
+            this.queries = queries;
+            this.pairs = pairs;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.peakHeap = peakHeap;
+        }
+    }
+
+    /**
+     * Samples the used heap (all pools together) every SAMPLE_MILLIS ms on a daemon thread and keeps the highest
+     * sample. The peaks of the single pools are not added up, as they are reached at different times.
+     */
+
+    private static class HeapSampler {
+        private static final long SAMPLE_MILLIS = 10;
+
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile long peak = 0;
+
+        HeapSampler() {
+            sample();
+            thread = new Thread(() -> {
+                while (running) {
+                    sample();
+                    try {
+                        Thread.sleep(SAMPLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void sample() {
+            peak = Math.max(peak, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+
+        /**
+         * Stop sampling.
+         * @return Highest used heap seen, in bytes.
+         */
+
+        long stop() {
+            running = false;
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+            return peak;
+        }
+    }
+
+    /**
+     * Run one type against the synthetic data.
+     * The load time is the time taken by the constructor. AspectsInCandidateSet does all of its work in the
+     * constructor, so for it the load time is included in the task time.
+     * @param type ProjectMain type.
+     * @return Result
+     */
+
+    @NotNull
+    public Result run(@NotNull String type) {
+        String paraIndex = data.getParaIndex().toString();
+        String catalogIndex = data.getCatalogIndex().toString();
+        String entityParaFile = data.getEntityParaFile().toString();
+        String entityRunFile = data.getEntityRunFile().toString();
+        String queriesFile = data.getQueriesFile().toString();
+        String entitiesFile = data.getEntitiesFile().toString();
+        String stopWordsFile = data.getStopWordsFile().toString();
+        String outFile = outDir.resolve(type + ".out").toString();
+        String mode = "test";
+
+        try {
+            // ECNRun appends to its output file
+            Files.deleteIfExists(Paths.get(outFile));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.gc();
+        MakeEntityData.PAIR_LATENCY.reset();
+        HeapSampler heapSampler = new HeapSampler();
+
+        long start = System.nanoTime();
+        long loaded = start;
+
+        switch (type) {
+            case "SupportPsg": {
+                SupportPsg ob = new SupportPsg(paraIndex, entityParaFile, entityRunFile, queriesFile, entitiesFile,
+                        stopWordsFile, parallel);
+                loaded = System.nanoTime();
+                ob.doTask(ob.entityRunMap.keySet(), mode);
+                ob.writeToFile(outFile, ob.entityDataMap);
+                break;
+            }
+            case "LeadText": {
+                LeadText ob = new LeadText(data.getEntityIndex().toString(), entityRunFile, mode, parallel);
+                loaded = System.nanoTime();
+                ob.doTask(ob.entityRunMap.keySet(), mode);
+                ob.writeToFile(outFile, ob.entityDataMap);
+                break;
+            }
+            case "AspectCandidateSet": {
+                new AspectsInCandidateSet(paraIndex, catalogIndex, data.getPassageRunFile().toString(), queriesFile,
+                        stopWordsFile, outFile, TAKE_K_DOCS, mode, parallel);
+                break;
+            }
+            case "AspectSupportPsg": {
+                AspectsInSupportPsg ob = new AspectsInSupportPsg(paraIndex, catalogIndex, entityParaFile,
+                        entityRunFile, queriesFile, entitiesFile, stopWordsFile, parallel);
+                loaded = System.nanoTime();
+                ob.doTask(ob.entityRunMap.keySet(), mode);
+                ob.writeToFile(outFile, ob.entityDataMap);
+                break;
+            }
+            case "BM25Psg": {
+                BM25Psg ob = new BM25Psg(paraIndex, entityParaFile, entityRunFile, queriesFile, entitiesFile,
+                        stopWordsFile, mode, parallel);
+                loaded = System.nanoTime();
+                ob.doTask(ob.entityRunMap.keySet(), mode);
+                ob.writeToFile(outFile, ob.entityDataMap);
+                break;
+            }
+            case "ECNRun": {
+                ECNRun ob = new ECNRun(paraIndex, entityParaFile, entityRunFile, queriesFile, entitiesFile,
+                        stopWordsFile, parallel);
+                loaded = System.nanoTime();
+                ob.run(ob.entityRunMap.keySet(), mode, outFile);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        long end = System.nanoTime();
+        long peakHeap = heapSampler.stop();
+
+        return new Result(type, loaded - start, end - loaded, data.getQueryNames().size(),
+                MakeEntityData.PAIR_LATENCY.getCount(),
+                MakeEntityData.PAIR_LATENCY.getPercentileNanos(50),
+                MakeEntityData.PAIR_LATENCY.getPercentileNanos(99),
+                peakHeap);
+    }
+
+    @NotNull
+    private String format(@NotNull Result r) {
+        int cores = parallel ? ForkJoinPool.commonPool().getParallelism() : 1;
+        double taskSecs = r.taskNanos / 1e9;
+        return String.format("%s\t%.2f\t%.2f\t%.3f\t%.1f\t%.3f\t%.3f\t%d",
+                r.type,
+                r.loadNanos / 1e9,
+                taskSecs,
+                r.queries / taskSecs / cores,
+                r.pairs / taskSecs / cores,
+                r.p50Nanos / 1e6,
+                r.p99Nanos / 1e6,
+                r.peakHeap / MB);
+    }
+
+    public static void main(@NotNull String[] args) throws IOException {
+        if (args.length < 5) {
+            System.out.println("Usage: WorkloadDriver <workDir> <numParas> <numEntities> <numQueries> <parallel> [type ...]");
+            System.out.println("Available types: " + String.join(", ", ALL_TYPES));
+            return;
+        }
+        Path workDir = Paths.get(args[0]);
+        int numParas = Integer.parseInt(args[1]);
+        int numEntities = Integer.parseInt(args[2]);
+        int numQueries = Integer.parseInt(args[3]);
+        boolean parallel = args[4].equals("true");
+        List<String> types = args.length > 5 ? Arrays.asList(args).subList(5, args.length) : ALL_TYPES;
+
+        System.out.print("Generating synthetic data...");
+        SyntheticData data = new SyntheticData(workDir.resolve("data"), numParas, numEntities, numQueries,
+                PARAS_PER_ENTITY, ENTITIES_PER_QUERY, 42L);
+        data.generate();
+        System.out.println("[Done].");
+
+        Path outDir = Files.createDirectories(workDir.resolve("out"));
+        WorkloadDriver driver = new WorkloadDriver(data, outDir, parallel);
+
+        List<String> report = new ArrayList<>();
+        report.add("type\tload_s\ttask_s\tqueries_per_s_per_core\tpairs_per_s_per_core\tp50_pair_ms\tp99_pair_ms\tpeak_heap_mb");
+        for (String type : types) {
+            System.out.println("Running " + type + "...");
+            report.add(driver.format(driver.run(type)));
+        }
+
+        try (BufferedWriter out = Files.newBufferedWriter(workDir.resolve("throughput.tsv"), StandardCharsets.UTF_8)) {
+            for (String line : report) {
+                System.out.println(line);
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package help;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aspect texts from the catalog index, with a cache shared by all queries and threads.
+ * Only the normalized text of an aspect is kept (no Lucene Document), and aspects which are not in the catalog are
+ * remembered too. Aspects which are not cached yet are loaded in one batch (see LuceneHelper.getDocuments()).
+ * The cache holds at most -DaspectCacheSize aspects (default 1000000); once it is full, new aspects are loaded but
+ * not cached.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class AspectCatalog {
+
+    private static final int CACHE_SIZE = Integer.getInteger("aspectCacheSize", 1000000);
+    private static final String MISSING = new String("");
+    private static final LongAdder ASPECT_CACHE_HITS = Metrics.counter("aspect_cache_hits");
+    private static final LongAdder ASPECT_CACHE_MISSES = Metrics.counter("aspect_cache_misses");
+
+    private final IndexSearcher searcher;
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    public AspectCatalog(IndexSearcher searcher) {
+        this.searcher = searcher;
+    }
+
+    public IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    /**
+     * Get the text of an aspect.
+     * @param aspectId Aspect
+     * @return Text with line breaks replaced by spaces, or null if the aspect is not in the catalog.
+     */
+
+    @Nullable
+    public String getText(String aspectId) {
+        return getTexts(Collections.singletonList(aspectId)).get(aspectId);
+    }
+
+    /**
+     * Get the texts of a batch of aspects.
+     * @param aspectIds Aspects
+     * @return Map of aspect_id --> text for the aspects found in the catalog.
+     */
+
+    @NotNull
+    public Map<String, String> getTexts(@NotNull Collection<String> aspectIds) {
+        Map<String, String> texts = new HashMap<>();
+        List<String> toLoad = new ArrayList<>();
+        Set<String> unique = new LinkedHashSet<>(aspectIds);
+        for (String aspectId : unique) {
+            String text = cache.get(aspectId);
+            if (text == null) {
+                toLoad.add(aspectId);
+            } else if (text != MISSING) {
+                texts.put(aspectId, text);
+            }
+        }
+        ASPECT_CACHE_HITS.add(unique.size() - toLoad.size());
+        ASPECT_CACHE_MISSES.add(toLoad.size());
+
+        if (!toLoad.isEmpty()) {
+            Document[] docs = LuceneHelper.getDocuments(toLoad, searcher);
+            for (int i = 0; i < docs.length; i++) {
+                String text = docs[i] == null ? MISSING : normalize(docs[i].get("Text"));
+                if (cache.size() < CACHE_SIZE) {
+                    cache.put(toLoad.get(i), text);
+                }
+                if (text != MISSING) {
+                    texts.put(toLoad.get(i), text);
+                }
+            }
+        }
+        return texts;
+    }
+
+    @NotNull
+    private static String normalize(@Nullable String text) {
+        return text == null ? "" : text.replace('\n', ' ').replace('\r', ' ');
+    }
+}
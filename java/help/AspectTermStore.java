@@ -0,0 +1,169 @@
+package help;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.Bits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Term vectors of the aspects of the catalog index, built offline, to rank the candidate aspects of an entity
+ * without building an in-memory index for them.
+ * The text of every aspect is analyzed with the EnglishAnalyzer (as in RankingHelper.rank()) and stored as
+ * "term freq term freq ..." in an OffHeapStringTable keyed by aspect id. The file is memory-mapped.
+ * A set of aspects is scored for a disjunction of weighted terms (as built by RankingHelper.toRm3Query()) with the
+ * statistics of the set itself, exactly as the LMJelinekMercerSimilarity(0.4) of the in-memory index does, so the
+ * top aspect is the same (see LocalLmScorer).
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class AspectTermStore {
+
+    private static final long MAGIC = 0x4245525441544d31L; // "BERTATM1"
+    private static final int VERSION = 1;
+    private static final LatencyHistogram ASPECT_SCORING = Metrics.timer("aspect_scoring");
+
+    private final OffHeapStringTable table;
+
+    private AspectTermStore(OffHeapStringTable table) {
+        this.table = table;
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Find the top aspect for a query.
+     * @param query Disjunction of (boosted) TermQuery on the "Text" field.
+     * @param aspectIds Aspects to rank.
+     * @return Position of the top aspect in the list, -1 if no aspect matches the query, or null if the aspects
+     * cannot be ranked with the store (an aspect is not in the store or the query is not a disjunction of terms).
+     */
+
+    @Nullable
+    public Integer top(@NotNull BooleanQuery query, @NotNull List<String> aspectIds) {
+        long start = System.nanoTime();
+        try {
+            LocalLmScorer scorer = LocalLmScorer.of(query);
+            if (scorer == null) {
+                return null;
+            }
+            List<String> vectors = new ArrayList<>(aspectIds.size());
+            for (String aspectId : aspectIds) {
+                String vector = table.get(aspectId);
+                if (vector == null) {
+                    return null;
+                }
+                vectors.add(vector);
+            }
+            int[] top = LocalLmScorer.top(scorer.score(vectors), 1);
+            return top.length == 0 ? -1 : top[0];
+        } finally {
+            ASPECT_SCORING.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Map a store written by {@link #build(IndexSearcher, Path)}.
+     * @param file Store file
+     * @return AspectTermStore backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not an aspect term store.
+     */
+
+    @NotNull
+    public static AspectTermStore open(@NotNull Path file) throws IOException {
+        return new AspectTermStore(OffHeapStringTable.load(file, MAGIC, VERSION));
+    }
+
+    /**
+     * Build the store from the catalog index. The segments of the index are analyzed in parallel.
+     * @param catalogSearcher IndexSearcher of the catalog index.
+     * @param file Store file to write.
+     * @throws IOException If the index cannot be read or the file cannot be written.
+     */
+
+    public static void build(@NotNull IndexSearcher catalogSearcher, @NotNull Path file) throws IOException {
+        List<LeafReaderContext> leaves = catalogSearcher.getIndexReader().leaves();
+        List<OffHeapStringTable.Builder> builders = leaves
+                .parallelStream()
+                .map(AspectTermStore::buildLeaf)
+                .collect(Collectors.toList());
+        OffHeapStringTable table = OffHeapStringTable.build(builders);
+        table.save(file, MAGIC, VERSION);
+        System.out.println("Wrote the term vectors of " + table.size() + " aspects to " + file);
+    }
+
+    @NotNull
+    private static OffHeapStringTable.Builder buildLeaf(@NotNull LeafReaderContext leaf) {
+        OffHeapStringTable.Builder builder = new OffHeapStringTable.Builder();
+        Analyzer analyzer = new EnglishAnalyzer();
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        try {
+            for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("Id", "Text");
+                leaf.reader().document(doc, visitor);
+                Document document = visitor.getDocument();
+                String aspectId = document.get("Id");
+                if (aspectId != null) {
+                    String text = document.get("Text");
+                    builder.put(aspectId, text == null ? "" : toVector(text, analyzer));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return builder;
+    }
+
+    /**
+     * Term vector of a text: "term freq term freq ...", with the terms in order of first occurrence.
+     */
+
+    @NotNull
+    static String toVector(@NotNull String text, @NotNull Analyzer analyzer) throws IOException {
+        StringBuilder vector = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : termFreqs(text, analyzer).entrySet()) {
+            if (vector.length() > 0) {
+                vector.append(' ');
+            }
+            vector.append(entry.getKey()).append(' ').append(entry.getValue());
+        }
+        return vector.toString();
+    }
+
+    /**
+     * Terms of a text with their frequencies, in order of first occurrence.
+     */
+
+    @NotNull
+    static LinkedHashMap<String, Integer> termFreqs(@NotNull String text, @NotNull Analyzer analyzer) throws IOException {
+        LinkedHashMap<String, Integer> freqs = new LinkedHashMap<>();
+        try (TokenStream tokenStream = analyzer.tokenStream("Text", new StringReader(text))) {
+            CharTermAttribute termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                freqs.merge(termAttribute.toString(), 1, Integer::sum);
+            }
+            tokenStream.end();
+        }
+        return freqs;
+    }
+}
@@ -0,0 +1,291 @@
+package help;
+
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
+import org.apache.lucene.util.FixedBitSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Ranks the paragraphs of all candidate entities of one query with a single in-memory index.
+ * The per-entity path (RankingHelper.rankDocuments) builds two in-memory indexes for every (query, entity) pair and
+ * analyzes the query each time, although co-occurring entities share many paragraphs. Here the union of the
+ * paragraphs of all candidate entities is loaded and indexed once, with the entities a paragraph belongs to in an
+ * extra field, and the query is analyzed once. Every entity is then ranked with a filtered search.
+ *
+ * The scores are the ones the per-entity path would give: the collection and term statistics used by the
+ * similarity are computed over the entity's paragraphs only, not over the whole batch. A paragraph which is listed
+ * twice for the same entity is only indexed once here, and ties may be broken in a different order.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class BatchedRanker implements Closeable {
+
+    private static final String ENTITY_FIELD = "BatchEntity";
+    private static final String TEXT_FIELD = "Text";
+    private static final LatencyHistogram BATCH_INDEX = Metrics.timer("batch_index");
+    private static final LatencyHistogram RANKING = Metrics.timer("ranking");
+
+    private final List<String> queryTokens;
+    private final IndexWriter iw;
+    private final IndexReader reader;
+    private final List<Document> documents;
+    private final Map<String, Integer> entityParaCount = new HashMap<>();
+    private final long[] docLength;
+    private final int[] docTerms;
+
+    /**
+     * Build the batch.
+     * @param queryStr Query
+     * @param entityParas Map of entity_id --> List[passage_id] for the candidate entities.
+     * @param paraSearcher IndexSearcher of the paragraph index.
+     * @throws IOException If the in-memory index cannot be built.
+     */
+
+    public BatchedRanker(String queryStr,
+                         @NotNull Map<String, List<String>> entityParas,
+                         IndexSearcher paraSearcher) throws IOException {
+        long start = System.nanoTime();
+        this.queryTokens = RankingHelper.tokenizeQuery(queryStr, TEXT_FIELD, new EnglishAnalyzer());
+
+        // 1. Load every paragraph of the batch once, remembering which entities it belongs to
+        Map<String, List<String>> paraEntities = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : entityParas.entrySet()) {
+            for (String paraId : entry.getValue()) {
+                paraEntities.computeIfAbsent(paraId, k -> new ArrayList<>(2)).add(entry.getKey());
+            }
+        }
+        List<Document> loaded = LuceneHelper.toLuceneDocList(new ArrayList<>(paraEntities.keySet()), paraSearcher);
+
+        // 2. Index them with the entity membership field
+        this.documents = new ArrayList<>(loaded.size());
+        this.iw = LuceneHelper.RAMIndex.createWriter(new EnglishAnalyzer());
+        for (Document d : loaded) {
+            List<String> entities = paraEntities.get(d.get("Id"));
+            if (entities == null) {
+                continue;
+            }
+            for (String entityId : new LinkedHashSet<>(entities)) {
+                d.add(new StringField(ENTITY_FIELD, entityId, Field.Store.NO));
+                entityParaCount.merge(entityId, 1, Integer::sum);
+            }
+            documents.add(d);
+        }
+        LuceneHelper.RAMIndex.createIndex(documents, iw);
+        this.reader = DirectoryReader.open(iw.getDirectory());
+
+        // 3. Exact length and number of unique terms of every paragraph, for the per-entity collection statistics
+        this.docLength = new long[reader.maxDoc()];
+        this.docTerms = new int[reader.maxDoc()];
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Terms terms = leaf.reader().terms(TEXT_FIELD);
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum postings = null;
+            while (termsEnum.next() != null) {
+                postings = termsEnum.postings(postings, PostingsEnum.FREQS);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    docLength[leaf.docBase + doc] += postings.freq();
+                    docTerms[leaf.docBase + doc]++;
+                }
+            }
+        }
+        BATCH_INDEX.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Whether the entity has paragraphs in this batch.
+     * @param entityId Entity
+     * @return True if the entity can be ranked with this batch.
+     */
+
+    public boolean contains(String entityId) {
+        return entityParaCount.containsKey(entityId);
+    }
+
+    /**
+     * Number of distinct paragraphs in the batch.
+     * @return Number of paragraphs.
+     */
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Rank the paragraphs of an entity using an RM3 query expanded with Pseudo-Relevance Feedback.
+     * This is the batched equivalent of RankingHelper.toBooleanQueryWithPRF() followed by rankDocuments().
+     * @param entityId Entity
+     * @param entityStr Name of the entity
+     * @param stopWords List of stop words
+     * @param numDocs Number of hits needed
+     * @param termStore Pre-analyzed paragraphs for RM3, or null.
+     * @return Top hits, or null if no paragraph of the entity matches the query.
+     */
+
+    @Nullable
+    public RankingHelper.RankedDocuments rankWithPRF(String entityId,
+                                                     String entityStr,
+                                                     List<String> stopWords,
+                                                     int numDocs,
+                                                     @Nullable ParagraphTermStore termStore) {
+        try {
+            // 1. Rank with the query and entity terms only
+            List<String> tokens = new ArrayList<>(queryTokens);
+            tokens.addAll(RankingHelper.tokenizeQuery(entityStr, TEXT_FIELD, new EnglishAnalyzer()));
+            BooleanQuery.Builder initialQuery = new BooleanQuery.Builder();
+            for (String token : tokens) {
+                initialQuery.add(new BoostQuery(new TermQuery(new Term(TEXT_FIELD, token)), 1.0f),
+                        BooleanClause.Occur.SHOULD);
+            }
+            RankingHelper.RankedDocuments feedback = rank(entityId, initialQuery.build(), 100);
+            if (feedback.isEmpty()) {
+                return null;
+            }
+
+            // 2. Expand the query with RM3 terms and rank again
+            BooleanQuery expandedQuery = RankingHelper.toBooleanQuery(queryTokens, feedback.toScoredDocuments(), stopWords,
+                    termStore);
+            return rank(entityId, expandedQuery, numDocs);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Rank the paragraphs of an entity for a query.
+     * @param entityId Entity
+     * @param query Lucene Query
+     * @param numDocs Number of hits needed
+     * @return Top hits, with documents materialized on demand.
+     */
+
+    @NotNull
+    public RankingHelper.RankedDocuments rank(String entityId, Query query, int numDocs) {
+        RankingHelper.RankedDocuments ranked = RankingHelper.RankedDocuments.empty();
+        PipelineEvents.RankDocuments event = new PipelineEvents.RankDocuments();
+        event.begin();
+        int paragraphs = entityParaCount.getOrDefault(entityId, 0);
+        try {
+            long start = System.nanoTime();
+            EntitySearcher searcher = paragraphs > 0 ? new EntitySearcher(entityId) : null;
+            if (searcher != null && searcher.hasText()) {
+                BooleanQuery filtered = new BooleanQuery.Builder()
+                        .add(query, BooleanClause.Occur.MUST)
+                        .add(new TermQuery(new Term(ENTITY_FIELD, entityId)), BooleanClause.Occur.FILTER)
+                        .build();
+                ScoreDoc[] retDocs = searcher.search(filtered, Math.max(1, numDocs)).scoreDocs;
+                int[] docs = new int[retDocs.length];
+                float[] scores = new float[retDocs.length];
+                for (int i = 0; i < retDocs.length; i++) {
+                    docs[i] = retDocs[i].doc;
+                    scores[i] = retDocs[i].score;
+                }
+                boolean inputOrder = reader.maxDoc() == documents.size();
+                ranked = new RankingHelper.RankedDocuments(docs, scores, searcher, inputOrder ? documents : null);
+            }
+            RANKING.record(System.nanoTime() - start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        RankingHelper.commit(event, paragraphs, ranked.size());
+        return ranked;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        iw.close();
+    }
+
+    /**
+     * Searcher over the batch which reports the statistics of the entity's paragraphs, so that the similarity scores
+     * them as if they were the whole index.
+     */
+
+    private class EntitySearcher extends IndexSearcher {
+        private final FixedBitSet members;
+        private final CollectionStatistics textStatistics;
+
+        EntitySearcher(String entityId) throws IOException {
+            super(reader);
+            setSimilarity(new LMJelinekMercerSimilarity(0.4f));
+            setQueryCache(null);
+
+            members = new FixedBitSet(reader.maxDoc());
+            Term entityTerm = new Term(ENTITY_FIELD, entityId);
+            for (LeafReaderContext leaf : reader.leaves()) {
+                PostingsEnum postings = leaf.reader().postings(entityTerm, PostingsEnum.NONE);
+                if (postings == null) {
+                    continue;
+                }
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    members.set(leaf.docBase + doc);
+                }
+            }
+
+            long maxDoc = 0, docCount = 0, sumTotalTermFreq = 0, sumDocFreq = 0;
+            for (int doc = 0; doc < members.length(); doc++) {
+                if (!members.get(doc)) {
+                    continue;
+                }
+                maxDoc++;
+                if (docTerms[doc] > 0) {
+                    docCount++;
+                    sumTotalTermFreq += docLength[doc];
+                    sumDocFreq += docTerms[doc];
+                }
+            }
+            textStatistics = docCount == 0
+                    ? null
+                    : new CollectionStatistics(TEXT_FIELD, maxDoc, docCount, sumTotalTermFreq, sumDocFreq);
+        }
+
+        boolean hasText() {
+            return textStatistics != null;
+        }
+
+        @Override
+        public CollectionStatistics collectionStatistics(String field) throws IOException {
+            return TEXT_FIELD.equals(field) ? textStatistics : super.collectionStatistics(field);
+        }
+
+        @Override
+        public TermStatistics termStatistics(Term term, int docFreq, long totalTermFreq) throws IOException {
+            if (!TEXT_FIELD.equals(term.field())) {
+                return super.termStatistics(term, docFreq, totalTermFreq);
+            }
+            long df = 0, ttf = 0;
+            for (LeafReaderContext leaf : reader.leaves()) {
+                PostingsEnum postings = leaf.reader().postings(term, PostingsEnum.FREQS);
+                if (postings == null) {
+                    continue;
+                }
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (members.get(leaf.docBase + doc)) {
+                        df++;
+                        ttf += postings.freq();
+                    }
+                }
+            }
+            // A term which no paragraph of the entity contains can only match paragraphs that are filtered out
+            return df == 0
+                    ? new TermStatistics(term.bytes(), 1, 1)
+                    : new TermStatistics(term.bytes(), df, ttf);
+        }
+    }
+}
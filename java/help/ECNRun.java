@@ -3,7 +3,6 @@ package help;
 
 import make_entity_data_file.SupportPsg;
 import me.tongfei.progressbar.ProgressBar;
-import org.apache.lucene.document.Document;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -21,8 +20,15 @@ import java.util.concurrent.ForkJoinPool;
 
 public class ECNRun extends SupportPsg {
 
+    private static final LatencyHistogram LOOKUP = Metrics.timer("lookup");
+    private static final LatencyHistogram DESCRIPTION = Metrics.timer("description");
+
+    /** Number of passages kept per (query, entity), -DecnTopN; 0 keeps all passages with a positive score. */
+    private static final int TOP_N = Integer.getInteger("ecnTopN", 0);
+
     // private Map<String, Set<String>> entities = new HashMap<>();
     public final List<String> runStrings;
+    private RunWriter runWriter = null;
 
     /**
      * Constructor for train data.
@@ -48,14 +54,10 @@ public class ECNRun extends SupportPsg {
                   String stopWordsFile,
                   boolean parallel) {
 
-        super(indexDir, entityPassageFile, entityRunFile, queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
-
-        this.runStrings = new ArrayList<>();
-
-        System.out.print("Loading entity file...");
-        entities = readEntityFile(entityFile);
-        System.out.println("[Done].");
+        super(indexDir, entityPassageFile, entityRunFile, entityFile, queryIdToNameFile, entityIdToNameFile,
+                stopWordsFile, parallel);
 
+        this.runStrings = Collections.synchronizedList(new ArrayList<>());
 
     }
 
@@ -76,11 +78,23 @@ public class ECNRun extends SupportPsg {
                   boolean parallel) {
 
         super(indexDir, entityPassageFile, entityRunFile,queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
-        this.runStrings = new ArrayList<>();
+        this.runStrings = Collections.synchronizedList(new ArrayList<>());
+
+    }
+
+    /**
+     * Write the run to a RunWriter as it is made, instead of keeping it in runStrings.
+     * @param runWriter RunWriter
+     */
 
+    public void setRunWriter(RunWriter runWriter) {
+        this.runWriter = runWriter;
     }
 
     public void writeRunFile(@NotNull List<String> runStrings, String filePath) {
+        long start = System.nanoTime();
+        PipelineEvents.Output event = new PipelineEvents.Output();
+        event.begin();
         BufferedWriter out = null;
         try {
             out = new BufferedWriter(new FileWriter(filePath,true));
@@ -104,6 +118,12 @@ public class ECNRun extends SupportPsg {
                 e.printStackTrace();
             }
         }
+        OUTPUT.record(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.file = filePath;
+            event.lines = runStrings.size();
+            event.commit();
+        }
     }
 
 
@@ -116,6 +136,7 @@ public class ECNRun extends SupportPsg {
      */
 
     public void doTask(@NotNull Set<String> querySet, String mode) {
+        Metrics.start();
         if (parallel) {
             System.out.println("Using Parallel Streams.");
             int parallelism = ForkJoinPool.commonPool().getParallelism();
@@ -129,14 +150,22 @@ public class ECNRun extends SupportPsg {
                         "to set the number of threads used");
             }
             // Do in parallel
-            querySet.parallelStream().forEach(queryId -> findSupportPsg(queryId, mode));
+            ProgressReporter progress = new ProgressReporter(querySet.size(),
+                    querySet.stream().mapToLong(q -> getTaskCost(q, mode)).sum());
+            querySet.parallelStream().forEach(queryId -> {
+                runWithQueryContext(queryId, getCandidateEntities(queryId, mode), () -> findSupportPsg(queryId, mode));
+                QUERIES.increment();
+                progress.taskDone(getTaskCost(queryId, mode));
+            });
+            progress.close();
         } else {
             System.out.println("Using Sequential Streams.");
 
             // Do in serial
             ProgressBar pb = new ProgressBar("Progress", querySet.size());
             for (String q : querySet) {
-                findSupportPsg(q, mode);
+                runWithQueryContext(q, getCandidateEntities(q, mode), () -> findSupportPsg(q, mode));
+                QUERIES.increment();
                 pb.step();
             }
             pb.close();
@@ -163,84 +192,108 @@ public class ECNRun extends SupportPsg {
 
         if (mode.equals("train")) {
             Set<String> entitySet = entities.get(queryId);
-            findSupportPsg(queryId, entitySet, retEntitySet);
+            findSupportPsg(queryId, entitySet);
         } else {
-            findSupportPsg(queryId, retEntitySet, retEntitySet);
-        }
-
-
-        if (parallel) {
-            System.out.println("Done query: " + queryId);
+            findSupportPsg(queryId, retEntitySet);
         }
 
     }
 
     private void findSupportPsg(String queryId,
-                                @NotNull Set<String> candidateEntitySet,
-                                Set<String> retEntitySet) {
+                                @NotNull Set<String> candidateEntitySet) {
 
         for (String entityId : candidateEntitySet) {
+            long start = System.nanoTime();
+            PipelineEvents.Pair event = new PipelineEvents.Pair();
+            event.start(queryId, entityId);
             try {
                 // Get the paragraphs which mention the entity
                 List<String> paraList = JSONArrayToList(new JSONObject(entityParaMap.get(entityId)).getJSONArray("paragraphs"));
+                LOOKUP.record(System.nanoTime() - start);
+                event.paragraphs = paraList.size();
 
                 // Rank these paragraphs for the query
-                List<RankingHelper.ScoredDocument> rankedParaList = rankParasForQuery(queryId, entityId, paraList);
+                List<RankingHelper.ScoredDocument> rankedParaList = rankParas(queryId, entityId, entityId, paraList);
 
                 // Create the ECD using the ranked paragraphs
-                EntityContextDocument d = createECD(entityId, rankedParaList);
-                if (d != null) {
-                    List<String> contextEntityList = d.getEntityList();
-                    Map<String, Double> freqDist = getDistribution(contextEntityList, retEntitySet);
-                    Map<String, Double> scoreMap = scoreDoc(d, freqDist);
-                    makeRunStrings(queryId, entityId, scoreMap);
+                long ranked = System.nanoTime();
+                EcnKernel kernel = getKernel(queryId);
+                int numDocs = kernel.score(entityId, rankedParaList, true);
+                if (numDocs > 0) {
+                    makeRunStrings(queryId, entityId, kernel, numDocs);
                 }
+                DESCRIPTION.record(System.nanoTime() - ranked);
             } catch (JSONException e) {
                 e.printStackTrace();
+            } finally {
+                event.finish();
             }
+            PAIR_LATENCY.record(System.nanoTime() - start);
         }
     }
 
-    @NotNull
-    private Map<String, Double> scoreDoc(@NotNull EntityContextDocument d, Map<String, Double> freqMap) {
-
-        Map<String, Double> scoreMap = new HashMap<>();
-
-        // Get the list of documents in the pseudo-document corresponding to the entity
-        List<Document> documents = d.getDocumentList();
-
-        // For every document do
-        for (Document doc : documents) {
-
-            // Get the score of the document
-            double score = getParaScore(doc, freqMap);
-
-            // Store
-            scoreMap.put(doc.get("Id"), score);
-        }
-        return scoreMap;
-    }
-
     /**
      * Method to make the run file strings.
+     * The paragraphs with a positive score are ranked by score, then by id, and only the top -DecnTopN are kept.
+     * They are selected with a heap of size N, so the paragraphs of an entity are not sorted in full.
      *
      * @param queryId  Query ID
-     * @param scoreMap HashMap of the scores for each paragraph
+     * @param entityId Entity ID
+     * @param kernel EcnKernel with the scored paragraphs of the entity.
+     * @param numDocs Number of scored paragraphs.
      */
 
-    private void makeRunStrings(String queryId, String entityId, Map<String, Double> scoreMap) {
-        LinkedHashMap<String, Double> paraScore = sortByValueDescending(scoreMap);
-        String runFileString;
-        int rank = 1;
-
-        for (String paraId : paraScore.keySet()) {
-            double score = paraScore.get(paraId);
-            if (score > 0) {
-                runFileString = queryId + " " + entityId + "/" + paraId + " Q0 " + rank + " " + score + " " + "ECN";
-                runStrings.add(runFileString);
-                rank++;
+    private void makeRunStrings(String queryId, String entityId, @NotNull EcnKernel kernel, int numDocs) {
+        Comparator<Integer> byRank = Comparator
+                .comparingDouble((Integer i) -> -kernel.getScore(i))
+                .thenComparing(i -> kernel.getDocument(i).get("Id"));
+
+        // The worst of the top paragraphs so far is at the head of the heap
+        PriorityQueue<Integer> heap = new PriorityQueue<>(byRank.reversed());
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < numDocs; i++) {
+            if (kernel.getScore(i) > 0 && seen.add(kernel.getDocument(i).get("Id"))) {
+                heap.add(i);
+                if (TOP_N > 0 && heap.size() > TOP_N) {
+                    heap.poll();
+                }
+            }
+        }
+        List<Integer> top = new ArrayList<>(heap);
+        top.sort(byRank);
+
+        List<String> paraIds = new ArrayList<>(top.size());
+        double[] scores = new double[top.size()];
+        for (int rank = 0; rank < top.size(); rank++) {
+            paraIds.add(kernel.getDocument(top.get(rank)).get("Id"));
+            scores[rank] = kernel.getScore(top.get(rank));
+        }
+
+        if (runWriter != null) {
+            runWriter.write(queryId, entityId, paraIds, scores);
+        } else {
+            for (int rank = 0; rank < paraIds.size(); rank++) {
+                runStrings.add(queryId + " " + entityId + "/" + paraIds.get(rank) + " Q0 " + (rank + 1) + " "
+                        + scores[rank] + " " + "ECN");
             }
+        }
+    }
 
+    /**
+     * Run the task and write the run file as it is made (see RunWriter).
+     * @param querySet Queries
+     * @param mode train/dev/test
+     * @param outFile Run file
+     */
+
+    public void run(@NotNull Set<String> querySet, String mode, String outFile) {
+        try (RunWriter writer = RunWriter.open(outFile, "ECN")) {
+            setRunWriter(writer);
+            doTask(querySet, mode);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            setRunWriter(null);
         }
     }
 
@@ -268,10 +321,7 @@ public class ECNRun extends SupportPsg {
                     queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
 
 
-            ob.doTask(ob.entities.keySet(), mode);
-            System.out.print("Writing to run file.....");
-            ob.writeRunFile(ob.runStrings, outFile);
-            System.out.println("[Done].");
+            ob.run(ob.entities.keySet(), mode, outFile);
             System.out.println("Run file written at: " + outFile);
 
 
@@ -287,10 +337,7 @@ public class ECNRun extends SupportPsg {
 
             ECNRun ob = new ECNRun(indexDir, entityPassageFile, entityRunFile,
                     queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
-            ob.doTask(ob.entityRunMap.keySet(), mode);
-            System.out.print("Writing to run file.....");
-            ob.writeRunFile(ob.runStrings, outFile);
-            System.out.println("[Done].");
+            ob.run(ob.entityRunMap.keySet(), mode, outFile);
             System.out.println("Run file written at: " + outFile);
 
         }
@@ -0,0 +1,287 @@
+package help;
+
+import org.apache.lucene.document.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Entity Context Neighbour (ECN) scoring of the paragraphs of an entity, for one query.
+ * Entities are interned to ints: the entities retrieved for the query get the ids 0..R-1, so the frequencies and
+ * weights of the context entities are dense arrays, and the entity links of every paragraph are parsed once per
+ * query and kept as an int array. Building the entity context document (ECD), its entity distribution and the
+ * scores of its paragraphs is then one pass over int arrays which allocates nothing.
+ * The results are bit-identical to SupportPsg.createECD(), getDistribution() and getParaScore(): the distribution
+ * value freq/norm rounded up to 4 decimals (DecimalFormat "#.####" with RoundingMode.CEILING) is computed exactly
+ * as ceil(freq * 10000 / norm) / 10000 (DecimalFormat gives 0 below 0.00001), and the scores are summed in the
+ * order of the entity links.
+ * With an EntityCooccurrenceIndex, the entity links of a paragraph are read from the index instead of being parsed
+ * from its "Entities" annotations; paragraphs which are not in the index are still parsed.
+ * A kernel is not thread-safe.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class EcnKernel {
+
+    private static final LongAdder TARGET_ENTITY_MISSING = Metrics.counter("target_entity_missing");
+    private static final int[] NO_ENTITIES = new int[0];
+
+    private final String queryId;
+    private final Map<String, Integer> entityIds = new HashMap<>();
+    private final Map<String, int[]> paraEntities = new HashMap<>();
+    private final int numRetrieved;
+    private final EntityCooccurrenceIndex cooccurrenceIndex;
+    // Ids of the index --> ids of the kernel
+    private final Map<Integer, Integer> indexIds = new HashMap<>();
+    private int nextId = 0;
+
+    // Frequency and weight of the retrieved entities in the current ECD; reset after every call
+    private final int[] counts;
+    private final double[] weights;
+    private final int[] touched;
+
+    // Paragraphs of the current ECD and their scores
+    private Document[] documents = new Document[16];
+    private int[][] documentEntities = new int[16][];
+    private double[] scores = new double[16];
+    private int size = 0;
+
+    /**
+     * Constructor.
+     * @param queryId Query
+     * @param retEntitySet Entities retrieved for the query.
+     */
+
+    public EcnKernel(String queryId, @NotNull Collection<String> retEntitySet) {
+        this(queryId, retEntitySet, null);
+    }
+
+    /**
+     * Constructor.
+     * @param queryId Query
+     * @param retEntitySet Entities retrieved for the query.
+     * @param cooccurrenceIndex Entity links of the paragraphs, or null to parse them from the paragraphs.
+     */
+
+    public EcnKernel(String queryId, @NotNull Collection<String> retEntitySet,
+                     @Nullable EntityCooccurrenceIndex cooccurrenceIndex) {
+        this.queryId = queryId;
+        this.cooccurrenceIndex = cooccurrenceIndex;
+        for (String entityId : retEntitySet) {
+            intern(entityId);
+        }
+        this.numRetrieved = nextId;
+        this.counts = new int[numRetrieved];
+        this.weights = new double[numRetrieved];
+        this.touched = new int[numRetrieved];
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    /**
+     * Build the ECD of an entity from its ranked paragraphs and score the paragraphs in it.
+     * The ECD is made of the paragraphs which mention the entity. Every paragraph is scored with the sum of the
+     * distribution values of its entities which are retrieved for the query.
+     * @param entityId Entity
+     * @param paraList Ranked paragraphs of the entity.
+     * @param scoreEntity Whether the entity itself contributes to the scores (SupportPsg leaves it out).
+     * @return Number of paragraphs in the ECD; see getDocument() and getScore().
+     */
+
+    public int score(String entityId, @NotNull List<RankingHelper.ScoredDocument> paraList, boolean scoreEntity) {
+        int target = intern(entityId);
+        int numTouched = 0;
+        long norm = 0;
+        size = 0;
+
+        for (RankingHelper.ScoredDocument scoredDocument : paraList) {
+            Document doc = scoredDocument.getDocument();
+            int[] entities = doc == null ? NO_ENTITIES : getEntities(doc);
+            if (entities.length == 0) {
+                // If the document does not have any entities then ignore
+                continue;
+            }
+            if (!contains(entities, target)) {
+                TARGET_ENTITY_MISSING.increment();
+                continue;
+            }
+            add(doc, entities);
+            for (int e : entities) {
+                if (e < numRetrieved) {
+                    if (counts[e]++ == 0) {
+                        touched[numTouched++] = e;
+                    }
+                    norm++;
+                }
+            }
+        }
+
+        // Distribution of the retrieved entities in the ECD
+        for (int i = 0; i < numTouched; i++) {
+            int e = touched[i];
+            weights[e] = counts[e] * 100000L < norm ? 0 : (double) ((counts[e] * 10000L + norm - 1) / norm) / 10000;
+        }
+        if (!scoreEntity && target < numRetrieved) {
+            weights[target] = 0;
+        }
+
+        // Entities which are not in the distribution have weight 0
+        for (int i = 0; i < size; i++) {
+            double score = 0;
+            for (int e : documentEntities[i]) {
+                if (e < numRetrieved) {
+                    score += weights[e];
+                }
+            }
+            scores[i] = score;
+        }
+
+        for (int i = 0; i < numTouched; i++) {
+            counts[touched[i]] = 0;
+            weights[touched[i]] = 0;
+        }
+        return size;
+    }
+
+    @NotNull
+    public Document getDocument(int i) {
+        return documents[i];
+    }
+
+    public double getScore(int i) {
+        return scores[i];
+    }
+
+    /**
+     * Top paragraph of the last ECD.
+     * @return Index of the first paragraph with the highest positive score, or -1 if no paragraph has one.
+     */
+
+    public int top() {
+        int top = -1;
+        double topScore = 0.0d;
+        for (int i = 0; i < size; i++) {
+            if (scores[i] > topScore) {
+                topScore = scores[i];
+                top = i;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Top paragraph of the last ECD.
+     * @return Document or null if no paragraph has a positive score.
+     */
+
+    @Nullable
+    public Document topDocument() {
+        int top = top();
+        return top < 0 ? null : documents[top];
+    }
+
+    private void add(Document doc, int[] entities) {
+        if (size == documents.length) {
+            documents = Arrays.copyOf(documents, size * 2);
+            documentEntities = Arrays.copyOf(documentEntities, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        documents[size] = doc;
+        documentEntities[size] = entities;
+        size++;
+    }
+
+    /**
+     * Entities linked in a paragraph, in order and with repetitions, parsed once per query.
+     */
+
+    @NotNull
+    private int[] getEntities(@NotNull Document doc) {
+        String paraId = doc.get("Id");
+        int[] entities = paraId == null ? null : paraEntities.get(paraId);
+        if (entities == null) {
+            entities = paraId == null || cooccurrenceIndex == null ? null : readEntities(paraId);
+            if (entities == null) {
+                entities = parseEntities(doc);
+            }
+            if (paraId != null) {
+                paraEntities.put(paraId, entities);
+            }
+        }
+        return entities;
+    }
+
+    @Nullable
+    private int[] readEntities(@NotNull String paraId) {
+        int[] entities = cooccurrenceIndex.getParagraphEntities(paraId);
+        if (entities == null) {
+            return null;
+        }
+        if (entities.length == 0) {
+            return NO_ENTITIES;
+        }
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = intern(entities[i]);
+        }
+        return entities;
+    }
+
+    @NotNull
+    private int[] parseEntities(@NotNull Document doc) {
+        String paraEntities = doc.get("Entities");
+        if (paraEntities == null) {
+            return NO_ENTITIES;
+        }
+        String[] lines = paraEntities.split("\n");
+        int[] entities = new int[lines.length];
+        int n = 0;
+        for (String entity : lines) {
+            if (!entity.isEmpty()) {
+                try {
+                    JSONObject jsonObject = new JSONObject(entity);
+                    entities[n++] = intern(jsonObject.getString("linkPageId"));
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return n == 0 ? NO_ENTITIES : Arrays.copyOf(entities, n);
+    }
+
+    private int intern(String entityId) {
+        Integer id = entityIds.get(entityId);
+        if (id == null) {
+            // An entity of the index has the same id whether it is met by name or in the index
+            int indexId = cooccurrenceIndex == null ? -1 : cooccurrenceIndex.getEntityId(entityId);
+            id = indexId < 0 ? nextId++ : intern(indexId);
+            entityIds.put(entityId, id);
+        }
+        return id;
+    }
+
+    private int intern(int indexId) {
+        Integer id = indexIds.get(indexId);
+        if (id == null) {
+            id = nextId++;
+            indexIds.put(indexId, id);
+        }
+        return id;
+    }
+
+    private static boolean contains(@NotNull int[] entities, int entity) {
+        for (int e : entities) {
+            if (e == entity) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,217 @@
+package help;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * The entities linked in every paragraph of the paragraph index, built offline, so that the entity context
+ * document of an entity can be built without parsing the "Entities" annotations of its paragraphs.
+ * Entities get int ids in order of decreasing paragraph frequency. The entity links of a paragraph (in order, with
+ * repetitions) are stored as base-36 ids separated by spaces, so most links take 2 or 3 bytes.
+ * Layout: [magic][version][entity_id --> id table][para_id --> entity ids table], both in the OffHeapStringTable
+ * layout, memory-mapped.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class EntityCooccurrenceIndex {
+
+    private static final long MAGIC = 0x4245525445434f31L; // "BERTECO1"
+    private static final int VERSION = 1;
+
+    private final OffHeapStringTable entityTable;
+    private final OffHeapStringTable paraTable;
+
+    private EntityCooccurrenceIndex(OffHeapStringTable entityTable, OffHeapStringTable paraTable) {
+        this.entityTable = entityTable;
+        this.paraTable = paraTable;
+    }
+
+    public int numEntities() {
+        return entityTable.size();
+    }
+
+    public int numParagraphs() {
+        return paraTable.size();
+    }
+
+    /**
+     * Get the id of an entity.
+     * @param entityId Entity
+     * @return Id, or -1 if the entity is not linked in any paragraph.
+     */
+
+    public int getEntityId(String entityId) {
+        String id = entityTable.get(entityId);
+        return id == null ? -1 : Integer.parseInt(id, Character.MAX_RADIX);
+    }
+
+    /**
+     * Get the entities linked in a paragraph.
+     * @param paraId Paragraph
+     * @return Ids of the linked entities, in order and with repetitions, or null if the paragraph is not indexed.
+     */
+
+    @Nullable
+    public int[] getParagraphEntities(String paraId) {
+        String ids = paraTable.get(paraId);
+        if (ids == null) {
+            return null;
+        }
+        int n = 0;
+        for (int i = 0; i < ids.length(); i++) {
+            if (ids.charAt(i) == ' ') {
+                n++;
+            }
+        }
+        int[] entities = new int[ids.isEmpty() ? 0 : n + 1];
+        int e = 0, id = 0;
+        for (int i = 0; i < ids.length(); i++) {
+            char c = ids.charAt(i);
+            if (c == ' ') {
+                entities[e++] = id;
+                id = 0;
+            } else {
+                id = id * Character.MAX_RADIX + Character.digit(c, Character.MAX_RADIX);
+            }
+        }
+        if (entities.length > 0) {
+            entities[e] = id;
+        }
+        return entities;
+    }
+
+    /**
+     * Map an index written by {@link #build(IndexSearcher, Path)}.
+     * @param file Index file
+     * @return EntityCooccurrenceIndex backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not an entity co-occurrence index.
+     */
+
+    @NotNull
+    public static EntityCooccurrenceIndex open(@NotNull Path file) throws IOException {
+        List<OffHeapStringTable> tables = OffHeapStringTable.load(file, MAGIC, VERSION, 2);
+        return new EntityCooccurrenceIndex(tables.get(0), tables.get(1));
+    }
+
+    /**
+     * Build the index from the paragraph index. The segments of the index are read in parallel, twice: once to
+     * count the paragraphs of every entity and once to encode the entity links of every paragraph.
+     * @param paraSearcher IndexSearcher of the paragraph index.
+     * @param file Index file to write.
+     * @throws IOException If the index cannot be read or the file cannot be written.
+     */
+
+    public static void build(@NotNull IndexSearcher paraSearcher, @NotNull Path file) throws IOException {
+        List<LeafReaderContext> leaves = paraSearcher.getIndexReader().leaves();
+
+        // 1. Count the paragraphs of every entity
+        System.out.print("Counting entities...");
+        Map<String, Integer> paraCounts = leaves
+                .parallelStream()
+                .map(EntityCooccurrenceIndex::countLeaf)
+                .collect(HashMap::new, EntityCooccurrenceIndex::addCounts, EntityCooccurrenceIndex::addCounts);
+        System.out.println("[Done].");
+
+        // 2. Frequent entities get short ids
+        List<String> entityOrder = new ArrayList<>(paraCounts.keySet());
+        entityOrder.sort(Comparator.comparing((String e) -> -paraCounts.get(e)).thenComparing(e -> e));
+        Map<String, Integer> ids = new HashMap<>();
+        OffHeapStringTable.Builder entityBuilder = new OffHeapStringTable.Builder();
+        for (String entityId : entityOrder) {
+            ids.put(entityId, ids.size());
+            entityBuilder.put(entityId, Integer.toString(ids.size() - 1, Character.MAX_RADIX));
+        }
+        paraCounts.clear();
+        OffHeapStringTable entityTable = entityBuilder.build();
+
+        // 3. Encode the entity links of every paragraph
+        System.out.print("Encoding the entities of " + paraSearcher.getIndexReader().numDocs() + " paragraphs...");
+        List<OffHeapStringTable.Builder> builders = leaves
+                .parallelStream()
+                .map(leaf -> encodeLeaf(leaf, ids))
+                .collect(Collectors.toList());
+        OffHeapStringTable paraTable = OffHeapStringTable.build(builders);
+        System.out.println("[Done].");
+
+        OffHeapStringTable.save(file, MAGIC, VERSION, Arrays.asList(entityTable, paraTable));
+        System.out.println("Wrote the entities of " + paraTable.size() + " paragraphs (" + entityTable.size()
+                + " entities) to " + file);
+    }
+
+    @NotNull
+    private static Map<String, Integer> countLeaf(@NotNull LeafReaderContext leaf) {
+        Map<String, Integer> paraCounts = new HashMap<>();
+        Set<String> paraEntities = new HashSet<>();
+        forEachParagraph(leaf, (paraId, entities) -> {
+            paraEntities.clear();
+            paraEntities.addAll(entities);
+            for (String entityId : paraEntities) {
+                paraCounts.merge(entityId, 1, Integer::sum);
+            }
+        });
+        return paraCounts;
+    }
+
+    private static void addCounts(@NotNull Map<String, Integer> paraCounts, @NotNull Map<String, Integer> counts) {
+        counts.forEach((entityId, count) -> paraCounts.merge(entityId, count, Integer::sum));
+    }
+
+    @NotNull
+    private static OffHeapStringTable.Builder encodeLeaf(@NotNull LeafReaderContext leaf,
+                                                         @NotNull Map<String, Integer> ids) {
+        OffHeapStringTable.Builder builder = new OffHeapStringTable.Builder();
+        StringBuilder encoded = new StringBuilder();
+        forEachParagraph(leaf, (paraId, entities) -> {
+            encoded.setLength(0);
+            for (String entityId : entities) {
+                if (encoded.length() > 0) {
+                    encoded.append(' ');
+                }
+                encoded.append(Integer.toString(ids.get(entityId), Character.MAX_RADIX));
+            }
+            builder.put(paraId, encoded.toString());
+        });
+        return builder;
+    }
+
+    /**
+     * Call the action with the id and the linked entities (as in SupportPsg.getEntitiesInPara()) of every live
+     * paragraph of a segment.
+     */
+
+    private static void forEachParagraph(@NotNull LeafReaderContext leaf,
+                                         @NotNull BiConsumer<String, List<String>> action) {
+        List<String> entities = new ArrayList<>();
+        try {
+            LuceneHelper.forEachParagraph(leaf, (doc, paraId, paraEntities) -> {
+                entities.clear();
+                if (paraEntities != null) {
+                    for (String entity : paraEntities.split("\n")) {
+                        if (!entity.isEmpty()) {
+                            try {
+                                entities.add(new JSONObject(entity).getString("linkPageId"));
+                            } catch (JSONException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }
+                }
+                action.accept(paraId, entities);
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package help;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Builds the entity --> paragraph file read by CandidatePsg (entityParaFile) from the paragraph index.
+ * The segments of the index are scanned in parallel; the (entity, paragraph) pairs of the "Entities" annotations of
+ * every paragraph are sorted in memory in runs of at most -DsortBufferPairs pairs in total (default 8000000), which
+ * are spilled to temporary files next to the output and merged in one pass. The output has one line per entity:
+ * entity_id TAB {"paragraphs": [para_id, ...]}, with the paragraphs in index order and without repetitions.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class EntityParagraphBuilder {
+
+    private static final int BUFFER_PAIRS = Integer.getInteger("sortBufferPairs", 8000000);
+
+    /**
+     * An (entity, paragraph) pair. The paragraph's global docID orders the paragraphs of an entity.
+     */
+
+    private static class Posting implements Comparable<Posting> {
+        private final String entityId;
+        private final String paraId;
+        private final int doc;
+
+        Posting(String entityId, String paraId, int doc) {
+            this.entityId = entityId;
+            this.paraId = paraId;
+            this.doc = doc;
+        }
+
+        @Override
+        public int compareTo(@NotNull Posting other) {
+            int c = entityId.compareTo(other.entityId);
+            return c != 0 ? c : Integer.compare(doc, other.doc);
+        }
+    }
+
+    /**
+     * Reads back a sorted run, one posting at a time.
+     */
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        private Posting current;
+
+        RunReader(@NotNull Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            advance();
+        }
+
+        void advance() throws IOException {
+            try {
+                current = new Posting(in.readUTF(), in.readUTF(), in.readInt());
+            } catch (EOFException e) {
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private final Path tempDir;
+    private final List<Path> runs = Collections.synchronizedList(new ArrayList<>());
+
+    private EntityParagraphBuilder(Path tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Build the entity --> paragraph file.
+     * @param paraSearcher IndexSearcher of the paragraph index.
+     * @param outFile File to write.
+     * @throws IOException If the index cannot be read or the files cannot be written.
+     */
+
+    public static void build(@NotNull IndexSearcher paraSearcher, @NotNull Path outFile) throws IOException {
+        Path parent = outFile.toAbsolutePath().getParent();
+        EntityParagraphBuilder builder = new EntityParagraphBuilder(Files.createTempDirectory(parent, "entity-paras"));
+        try {
+            List<LeafReaderContext> leaves = paraSearcher.getIndexReader().leaves();
+            // Every segment being scanned at the same time has its share of the buffer
+            int scanners = Math.max(1, Math.min(leaves.size(), ForkJoinPool.getCommonPoolParallelism() + 1));
+            int bufferPairs = Math.max(1, BUFFER_PAIRS / scanners);
+            System.out.print("Sorting the entities of " + paraSearcher.getIndexReader().numDocs() + " paragraphs...");
+            try {
+                leaves.parallelStream().forEach(leaf -> builder.scan(leaf, bufferPairs));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            System.out.println("[Done].");
+
+            System.out.print("Merging " + builder.runs.size() + " sorted runs...");
+            int numEntities = builder.merge(outFile);
+            System.out.println("[Done].");
+            System.out.println("Wrote the paragraphs of " + numEntities + " entities to " + outFile);
+        } finally {
+            try (Stream<Path> files = Files.list(builder.tempDir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(builder.tempDir);
+        }
+    }
+
+    private void scan(@NotNull LeafReaderContext leaf, int bufferPairs) {
+        List<Posting> buffer = new ArrayList<>();
+        try {
+            LuceneHelper.forEachParagraph(leaf, (doc, paraId, paraEntities) -> {
+                if (paraEntities == null) {
+                    return;
+                }
+                for (String entity : paraEntities.split("\n")) {
+                    if (!entity.isEmpty()) {
+                        try {
+                            String entityId = new JSONObject(entity).getString("linkPageId");
+                            buffer.add(new Posting(entityId, paraId, leaf.docBase + doc));
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                if (buffer.size() >= bufferPairs) {
+                    spill(buffer);
+                }
+            });
+            if (!buffer.isEmpty()) {
+                spill(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void spill(@NotNull List<Posting> buffer) throws IOException {
+        Collections.sort(buffer);
+        Path run = Files.createTempFile(tempDir, "run", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (Posting posting : buffer) {
+                out.writeUTF(posting.entityId);
+                out.writeUTF(posting.paraId);
+                out.writeInt(posting.doc);
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+    }
+
+    private int merge(@NotNull Path outFile) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                (r1, r2) -> r1.current.compareTo(r2.current));
+        int numEntities = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(outFile, StandardCharsets.UTF_8)) {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.current != null) {
+                    queue.add(reader);
+                }
+            }
+
+            String entityId = null;
+            int lastDoc = -1;
+            List<String> paragraphs = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                Posting posting = reader.current;
+                if (!posting.entityId.equals(entityId)) {
+                    if (entityId != null) {
+                        write(out, entityId, paragraphs);
+                        numEntities++;
+                    }
+                    entityId = posting.entityId;
+                    lastDoc = -1;
+                    paragraphs.clear();
+                }
+                // A paragraph which mentions the entity more than once is listed once
+                if (posting.doc != lastDoc) {
+                    paragraphs.add(posting.paraId);
+                    lastDoc = posting.doc;
+                }
+                reader.advance();
+                if (reader.current != null) {
+                    queue.add(reader);
+                }
+            }
+            if (entityId != null) {
+                write(out, entityId, paragraphs);
+                numEntities++;
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        return numEntities;
+    }
+
+    private static void write(@NotNull BufferedWriter out, String entityId, List<String> paragraphs) throws IOException {
+        try {
+            out.write(entityId + "\t" + new JSONObject().put("paragraphs", new JSONArray(paragraphs)));
+            out.newLine();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+}
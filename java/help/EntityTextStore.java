@@ -0,0 +1,106 @@
+package help;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A text field of the entity index (e.g. the lead text), extracted once into a memory-mapped entity_id --> text
+ * file. Line breaks in the text are replaced by spaces when the file is built, as MakeEntityData.idToText() does, so
+ * a lookup is a hash probe in the mapped OffHeapStringTable and a UTF-8 decode, without a search or a stored
+ * document load.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class EntityTextStore {
+
+    private static final long MAGIC = 0x4245525445545831L; // "BERTETX1"
+    private static final int VERSION = 1;
+
+    private final OffHeapStringTable table;
+
+    private EntityTextStore(OffHeapStringTable table) {
+        this.table = table;
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Get the text of an entity.
+     * @param entityId Entity
+     * @return Text, empty if the entity has no text, or null if the entity is not in the store.
+     */
+
+    @Nullable
+    public String get(String entityId) {
+        return table.get(entityId);
+    }
+
+    /**
+     * Map a store written by {@link #build(IndexSearcher, String, Path)}.
+     * @param file Store file
+     * @return EntityTextStore backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not an entity text store.
+     */
+
+    @NotNull
+    public static EntityTextStore open(@NotNull Path file) throws IOException {
+        return new EntityTextStore(OffHeapStringTable.load(file, MAGIC, VERSION));
+    }
+
+    /**
+     * Build the store from the entity index. The segments of the index are read in parallel.
+     * @param entitySearcher IndexSearcher of the entity index.
+     * @param field Text field to extract, e.g. "LeadText".
+     * @param file Store file to write.
+     * @throws IOException If the index cannot be read or the file cannot be written.
+     */
+
+    public static void build(@NotNull IndexSearcher entitySearcher, String field, @NotNull Path file) throws IOException {
+        List<LeafReaderContext> leaves = entitySearcher.getIndexReader().leaves();
+        List<OffHeapStringTable.Builder> builders = leaves
+                .parallelStream()
+                .map(leaf -> buildLeaf(leaf, field))
+                .collect(Collectors.toList());
+        OffHeapStringTable table = OffHeapStringTable.build(builders);
+        table.save(file, MAGIC, VERSION);
+        System.out.println("Wrote the " + field + " of " + table.size() + " entities to " + file);
+    }
+
+    @NotNull
+    private static OffHeapStringTable.Builder buildLeaf(@NotNull LeafReaderContext leaf, String field) {
+        OffHeapStringTable.Builder builder = new OffHeapStringTable.Builder();
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        try {
+            for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("Id", field);
+                leaf.reader().document(doc, visitor);
+                Document document = visitor.getDocument();
+                String entityId = document.get("Id");
+                if (entityId != null) {
+                    String text = document.get(field);
+                    builder.put(entityId, text == null ? "" : text.replace('\n', ' ').replace('\r', ' '));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,202 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a (key, value) TSV file, optionally keeping only the rows whose key is in a given set.
+ * The file is split into byte ranges which are scanned in parallel. Only the key of a row is decoded unless the
+ * row is kept, so the cost of skipping a row is close to the cost of reading its bytes from disk.
+ * Rows are accepted under the same rule as MakeEntityData.readTsvFile (exactly two tab-separated fields) and,
+ * as there, the last occurrence of a duplicate key wins.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class FilteredTsvReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MIN_CHUNK_SIZE = 1L << 24;
+
+    private static class MapSink extends HashMap<String, String> implements BiConsumer<String, String> {
+        @Override
+        public void accept(String key, String value) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Read the rows of a TSV file whose key is in the given set.
+     * @param file Path to the TSV file.
+     * @param keys Keys to keep.
+     * @return Map representation of the matching rows.
+     */
+
+    @NotNull
+    public static Map<String, String> read(String file, @NotNull Set<String> keys) {
+        Map<String, String> fileMap = new HashMap<>();
+        if (keys.isEmpty()) {
+            return fileMap;
+        }
+
+        // Merge in file order so that later rows overwrite earlier ones
+        for (MapSink part : read(file, keys, MapSink::new)) {
+            fileMap.putAll(part);
+        }
+        return fileMap;
+    }
+
+    /**
+     * Read the rows of a TSV file whose key is in the given set into one sink per chunk of the file.
+     * @param file Path to the TSV file.
+     * @param keys Keys to keep. If null, all rows are kept.
+     * @param sinkFactory Creates the sink for a chunk.
+     * @return The sinks of all chunks in file order.
+     */
+
+    @NotNull
+    public static <S extends BiConsumer<String, String>> List<S> read(String file,
+                                                                      @Nullable Set<String> keys,
+                                                                      @NotNull Supplier<S> sinkFactory) {
+        Path path = Paths.get(file);
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+
+        // Use a few chunks per worker so that a slow chunk does not hold up the whole file
+        int numChunks = (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, size / MIN_CHUNK_SIZE));
+        long chunkSize = (size + numChunks - 1) / numChunks;
+
+        return IntStream.range(0, numChunks)
+                .parallel()
+                .mapToObj(i -> readChunk(path, i * chunkSize, Math.min(size, (i + 1) * chunkSize), keys, sinkFactory.get()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Scan the lines which start in the byte range [start, end).
+     */
+
+    @NotNull
+    private static <S extends BiConsumer<String, String>> S readChunk(Path path,
+                                                                      long start,
+                                                                      long end,
+                                                                      @Nullable Set<String> keys,
+                                                                      @NotNull S sink) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            LineScanner scanner = new LineScanner(channel, start == 0 ? 0 : start - 1);
+
+            // A line belongs to the chunk in which its first byte lies.
+            // If the byte before the chunk is not a newline, the first line belongs to the previous chunk.
+            if (start > 0 && !scanner.nextLine()) {
+                return sink;
+            }
+
+            while (scanner.position() < end && scanner.nextLine()) {
+                byte[] line = scanner.line();
+                int lineLen = scanner.length();
+                if (lineLen > 0 && line[lineLen - 1] == '\r') {
+                    lineLen--;
+                }
+
+                int keyLen = 0;
+                while (keyLen < lineLen && line[keyLen] != '\t') {
+                    keyLen++;
+                }
+
+                if (keys == null || keys.contains(new String(line, 0, keyLen, StandardCharsets.UTF_8))) {
+                    String[] fields = new String(line, 0, lineLen, StandardCharsets.UTF_8).split("\t");
+                    if (fields.length == 2) {
+                        sink.accept(fields[0], fields[1]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sink;
+    }
+
+    /**
+     * Reads newline-terminated lines from a FileChannel into a reusable byte array.
+     */
+
+    private static class LineScanner {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private byte[] line = new byte[1024];
+        private int length = 0;
+        private long position;
+
+        LineScanner(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.position = position;
+            channel.position(position);
+            buffer.flip();
+        }
+
+        /**
+         * Position in the file of the next unread byte.
+         */
+        long position() {
+            return position;
+        }
+
+        byte[] line() {
+            return line;
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * Read the next line, without its terminating newline.
+         * @return false if there are no more bytes to read.
+         */
+        boolean nextLine() throws IOException {
+            length = 0;
+            boolean readAny = false;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int n = channel.read(buffer);
+                    buffer.flip();
+                    if (n <= 0) {
+                        return readAny;
+                    }
+                }
+                readAny = true;
+                byte b = buffer.get();
+                position++;
+                if (b == '\n') {
+                    return true;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+    }
+}
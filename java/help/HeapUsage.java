@@ -0,0 +1,73 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Snapshot of heap footprint, off-heap buffer usage and GC time, used to report the cost of loading large tables.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class HeapUsage {
+    private static final long MB = 1024 * 1024;
+
+    private final long heapUsed;
+    private final long bufferUsed;
+    private final long gcTimeMillis;
+    private final long gcCount;
+
+    private HeapUsage(long heapUsed, long bufferUsed, long gcTimeMillis, long gcCount) {
+        this.heapUsed = heapUsed;
+        this.bufferUsed = bufferUsed;
+        this.gcTimeMillis = gcTimeMillis;
+        this.gcCount = gcCount;
+    }
+
+    /**
+     * Measure the current usage.
+     * The GC counters are read first, then a full GC is requested so that the heap figure is the live footprint.
+     * @return HeapUsage
+     */
+
+    @NotNull
+    public static HeapUsage measure() {
+        long gcTime = 0, gcCount = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcTime += Math.max(0, gc.getCollectionTime());
+            gcCount += Math.max(0, gc.getCollectionCount());
+        }
+
+        System.gc();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        long bufferUsed = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            bufferUsed += Math.max(0, pool.getMemoryUsed());
+        }
+        return new HeapUsage(heapUsed, bufferUsed, gcTime, gcCount);
+    }
+
+    /**
+     * Describe this usage and the change since an earlier snapshot.
+     * @param before Earlier snapshot.
+     * @return Human readable report.
+     */
+
+    @NotNull
+    public String since(@NotNull HeapUsage before) {
+        return "Heap used: " + heapUsed / MB + " MB (" + signed((heapUsed - before.heapUsed) / MB) + " MB), " +
+                "direct/mapped buffers: " + bufferUsed / MB + " MB (" + signed((bufferUsed - before.bufferUsed) / MB) + " MB), " +
+                "GC time: " + gcTimeMillis + " ms (" + signed(gcTimeMillis - before.gcTimeMillis) + " ms in " +
+                (gcCount - before.gcCount) + " collections)";
+    }
+
+    @NotNull
+    private static String signed(long value) {
+        return value >= 0 ? "+" + value : String.valueOf(value);
+    }
+}
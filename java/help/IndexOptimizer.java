@@ -0,0 +1,305 @@
+package help;
+
+import org.apache.lucene.codecs.lucene87.Lucene87Codec;
+import org.apache.lucene.codecs.lucene87.Lucene87StoredFieldsFormat;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Rewrites a read-only index (the paragraph or the catalog index) into a layout for the lookups of this project:
+ * one segment, documents sorted by "Id" (so the paragraphs of a batch of sorted ids are close together), "Id" as
+ * sorted doc values and "Entities" as binary doc values, and stored fields in the BEST_SPEED mode (small LZ4 blocks)
+ * for fast random access.
+ * The segments are copied one at a time with IndexWriter.addIndexes() and then merged into one sorted segment, so the
+ * postings and norms (and hence the scores) are those of the original index; the doc values are made from the stored
+ * fields. The commit is tagged with {@link #LAYOUT_KEY}. LuceneHelper reads the ids from the doc values when they are
+ * there, and the scans of the whole paragraph index (build EntityParagraphs and EntityCooccurrence) read the ids and
+ * the entity annotations from the doc values instead of the stored fields.
+ * Only the ids of the segment being copied are held in memory: their bytes plus about 20 bytes per document. The
+ * final merge reads the doc values of the copied segments from disk. The output needs room for the index twice.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class IndexOptimizer {
+
+    public static final String LAYOUT_KEY = "bert-er.layout";
+    public static final String LAYOUT = "optimized-1";
+
+    /**
+     * Rewrite an index.
+     * @param index Index to rewrite. It is not modified.
+     * @param outIndex Directory of the new index. An index in it is overwritten.
+     * @throws IOException If the index cannot be read or the new index cannot be written.
+     */
+
+    public static void optimize(@NotNull Path index, @NotNull Path outIndex) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(index));
+             Directory outDir = FSDirectory.open(outIndex)) {
+            List<LeafReaderContext> leaves = reader.leaves();
+            if (leaves.isEmpty()) {
+                throw new IOException("Empty index: " + index);
+            }
+
+            // The documents are copied, not analyzed, so the analyzer of the config is not used
+            IndexWriterConfig conf = new IndexWriterConfig();
+            conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            conf.setIndexCreatedVersionMajor(leaves.get(0).reader().getMetaData().getCreatedVersionMajor());
+            conf.setIndexSort(new Sort(new SortField("Id", SortField.Type.STRING)));
+            conf.setCodec(new Lucene87Codec(Lucene87StoredFieldsFormat.Mode.BEST_SPEED));
+            conf.setUseCompoundFile(false);
+
+            try (IndexWriter writer = new IndexWriter(outDir, conf)) {
+                // Every segment is copied to a new sorted segment, with the doc values of its ids
+                for (int i = 0; i < leaves.size(); i++) {
+                    System.out.print("Copying segment " + (i + 1) + " of " + leaves.size() + " ("
+                            + leaves.get(i).reader().numDocs() + " documents)...");
+                    writer.addIndexes(SlowCodecReaderWrapper.wrap(new DocValuesReader(leaves.get(i).reader())));
+                    System.out.println("[Done].");
+                }
+
+                // The copies are merged into one segment, sorted by the index sort
+                System.out.print("Merging the segments...");
+                writer.forceMerge(1);
+                writer.setLiveCommitData(Collections.singletonMap(LAYOUT_KEY, LAYOUT).entrySet());
+                writer.commit();
+                System.out.println("[Done].");
+            }
+            System.out.println("Wrote " + reader.numDocs() + " documents in " + leaves.size() + " segments to one segment at " + outIndex);
+        }
+    }
+
+    /**
+     * Whether an index was written by {@link #optimize(Path, Path)}.
+     * @param reader IndexReader
+     * @return True if the commit of the reader has the layout tag.
+     */
+
+    public static boolean isOptimized(@NotNull IndexReader reader) {
+        if (!(reader instanceof DirectoryReader)) {
+            return false;
+        }
+        try {
+            return LAYOUT.equals(((DirectoryReader) reader).getIndexCommit().getUserData().get(LAYOUT_KEY));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * A segment with its "Id" and "Entities" stored fields exposed as doc values.
+     */
+
+    private static class DocValuesReader extends FilterLeafReader {
+
+        // Distinct ids (as SortedDocValuesWriter keeps them: bytes in a BytesRefHash, and the hash ids in BytesRef
+        // order), and the ord of the id of every document (-1 if it has none)
+        private final BytesRefHash ids;
+        private final int[] sortedIds;
+        private final int[] ords;
+        private final boolean hasEntities;
+        private final FieldInfos fieldInfos;
+
+        DocValuesReader(@NotNull LeafReader in) throws IOException {
+            super(in);
+            this.ids = new BytesRefHash();
+            this.ords = new int[in.maxDoc()];
+            for (int doc = 0; doc < in.maxDoc(); doc++) {
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("Id");
+                in.document(doc, visitor);
+                String id = visitor.getDocument().get("Id");
+                if (id == null) {
+                    ords[doc] = -1;
+                } else {
+                    int hashId = ids.add(new BytesRef(id));
+                    ords[doc] = hashId >= 0 ? hashId : -hashId - 1;
+                }
+            }
+            this.sortedIds = ids.sort();
+            int[] ordOfHashId = new int[ids.size()];
+            for (int ord = 0; ord < ordOfHashId.length; ord++) {
+                ordOfHashId[sortedIds[ord]] = ord;
+            }
+            for (int doc = 0; doc < ords.length; doc++) {
+                if (ords[doc] >= 0) {
+                    ords[doc] = ordOfHashId[ords[doc]];
+                }
+            }
+
+            this.hasEntities = in.getFieldInfos().fieldInfo("Entities") != null;
+            List<FieldInfo> infos = new ArrayList<>();
+            for (FieldInfo info : in.getFieldInfos()) {
+                if (info.name.equals("Id")) {
+                    infos.add(withDocValues(info, DocValuesType.SORTED));
+                } else if (info.name.equals("Entities")) {
+                    infos.add(withDocValues(info, DocValuesType.BINARY));
+                } else {
+                    infos.add(info);
+                }
+            }
+            this.fieldInfos = new FieldInfos(infos.toArray(new FieldInfo[0]));
+        }
+
+        @NotNull
+        private static FieldInfo withDocValues(@NotNull FieldInfo info, @NotNull DocValuesType type) {
+            if (info.getDocValuesType() != DocValuesType.NONE && info.getDocValuesType() != type) {
+                throw new IllegalArgumentException("Field " + info.name + " already has " + info.getDocValuesType()
+                        + " doc values");
+            }
+            return new FieldInfo(info.name, info.number, info.hasVectors(), info.omitsNorms(), info.hasPayloads(),
+                    info.getIndexOptions(), type, -1, new HashMap<>(info.attributes()), info.getPointDimensionCount(),
+                    info.getPointIndexDimensionCount(), info.getPointNumBytes(), info.isSoftDeletesField());
+        }
+
+        @Override
+        public FieldInfos getFieldInfos() {
+            return fieldInfos;
+        }
+
+        @Override
+        public LeafMetaData getMetaData() {
+            // The documents are sorted again whatever the sort of the segment is
+            LeafMetaData metaData = in.getMetaData();
+            return new LeafMetaData(metaData.getCreatedVersionMajor(), metaData.getMinVersion(), null);
+        }
+
+        @Override
+        public SortedDocValues getSortedDocValues(String field) throws IOException {
+            return field.equals("Id") ? new IdValues() : in.getSortedDocValues(field);
+        }
+
+        @Override
+        public BinaryDocValues getBinaryDocValues(String field) throws IOException {
+            return field.equals("Entities") && hasEntities ? new EntitiesValues() : in.getBinaryDocValues(field);
+        }
+
+        @Nullable
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return null;
+        }
+
+        private class IdValues extends SortedDocValues {
+            private final BytesRef scratch = new BytesRef();
+            private int doc = -1;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return advance(doc + 1);
+            }
+
+            @Override
+            public int advance(int target) {
+                for (doc = target; doc < ords.length; doc++) {
+                    if (ords[doc] >= 0) {
+                        return doc;
+                    }
+                }
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public boolean advanceExact(int target) {
+                doc = target;
+                return ords[target] >= 0;
+            }
+
+            @Override
+            public long cost() {
+                return ords.length;
+            }
+
+            @Override
+            public int ordValue() {
+                return ords[doc];
+            }
+
+            @Override
+            public BytesRef lookupOrd(int ord) {
+                return ids.get(sortedIds[ord], scratch);
+            }
+
+            @Override
+            public int getValueCount() {
+                return sortedIds.length;
+            }
+        }
+
+        private class EntitiesValues extends BinaryDocValues {
+            private int doc = -1;
+            private BytesRef value;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() throws IOException {
+                return advance(doc + 1);
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+                for (doc = target; doc < maxDoc(); doc++) {
+                    if (load(doc)) {
+                        return doc;
+                    }
+                }
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public boolean advanceExact(int target) throws IOException {
+                doc = target;
+                return load(target);
+            }
+
+            @Override
+            public long cost() {
+                return maxDoc();
+            }
+
+            @Override
+            public BytesRef binaryValue() {
+                return value;
+            }
+
+            private boolean load(int target) throws IOException {
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("Entities");
+                in.document(target, visitor);
+                String entities = visitor.getDocument().get("Entities");
+                value = entities == null ? null : new BytesRef(entities);
+                return value != null;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of the loaded state of a job: the query, entity name and entity to passage tables, the entity run and the
+ * entity file. The snapshot is a single binary file; the tables are stored in the OffHeapStringTable layout and are
+ * memory-mapped on restore, so restoring takes seconds instead of re-parsing the TSV files.
+ * The snapshot records a checksum of its input files and is ignored if any of them has changed.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class JobSnapshot {
+
+    private static final long MAGIC = 0x4245525445525331L; // "BERTERS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8 + 4 + 8;
+
+    /** Files up to this size are checksummed completely, larger ones are sampled. */
+    private static final long FULL_CHECKSUM_LIMIT = 256L * 1024 * 1024;
+    private static final int SAMPLE_BLOCKS = 64;
+    private static final int SAMPLE_BLOCK_SIZE = 64 * 1024;
+
+    private final List<StringTable> tables;
+    private final Map<String, LinkedHashMap<String, Double>> runMap;
+    private final Map<String, Set<String>> entityMap;
+
+    private JobSnapshot(List<StringTable> tables,
+                        Map<String, LinkedHashMap<String, Double>> runMap,
+                        Map<String, Set<String>> entityMap) {
+        this.tables = tables;
+        this.runMap = runMap;
+        this.entityMap = entityMap;
+    }
+
+    /**
+     * Get a restored table.
+     * @param i Index of the table, in the order in which the tables were written.
+     * @return StringTable backed by the mapped snapshot.
+     */
+    @NotNull
+    public StringTable getTable(int i) {
+        return tables.get(i);
+    }
+
+    @NotNull
+    public Map<String, LinkedHashMap<String, Double>> getRunMap() {
+        return runMap;
+    }
+
+    @NotNull
+    public Map<String, Set<String>> getEntityMap() {
+        return entityMap;
+    }
+
+    /**
+     * Compute the checksum of the inputs of a job.
+     * Small files are checksummed completely. For large files the length, the modification time and a sample of
+     * evenly spaced blocks (including the first and last block) are checksummed instead.
+     * @param inputFiles Input files. A null entry stands for an input that is not used.
+     * @param options Options which change what is loaded from the inputs.
+     * @return Checksum
+     */
+    public static long checksum(@NotNull List<String> inputFiles, @NotNull String options) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(options.getBytes(StandardCharsets.UTF_8));
+        byte[] block = new byte[SAMPLE_BLOCK_SIZE];
+
+        for (String file : inputFiles) {
+            ByteBuffer meta = ByteBuffer.allocate(17);
+            if (file == null) {
+                crc.update(meta.array());
+                continue;
+            }
+            Path path = Paths.get(file);
+            long length = Files.size(path);
+            meta.put((byte) 1).putLong(length);
+
+            try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "r")) {
+                if (length <= FULL_CHECKSUM_LIMIT) {
+                    int n;
+                    while ((n = raf.read(block)) > 0) {
+                        crc.update(block, 0, n);
+                    }
+                } else {
+                    meta.putLong(Files.getLastModifiedTime(path).toMillis());
+                    long stride = (length - SAMPLE_BLOCK_SIZE) / (SAMPLE_BLOCKS - 1);
+                    for (int i = 0; i < SAMPLE_BLOCKS; i++) {
+                        raf.seek(i * stride);
+                        raf.readFully(block);
+                        crc.update(block, 0, block.length);
+                    }
+                }
+            }
+            crc.update(meta.array());
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Restore a snapshot if it exists and was made from the same inputs.
+     * @param snapshotFile Path to the snapshot.
+     * @param checksum Checksum of the inputs of the current job.
+     * @return The restored snapshot, or null if there is no valid snapshot.
+     */
+    @Nullable
+    public static JobSnapshot restore(@NotNull String snapshotFile, long checksum) {
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + 4) {
+                System.err.println("Not a snapshot file: " + snapshotFile);
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + 4);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                System.err.println("Not a snapshot file (or an older version): " + snapshotFile);
+                return null;
+            }
+            if (header.getLong() != checksum) {
+                System.out.println("Inputs have changed since the snapshot was made.");
+                return null;
+            }
+
+            // Mappings stay valid after the channel is closed
+            int numTables = header.getInt();
+            long position = HEADER_SIZE + 4;
+            List<StringTable> tables = new ArrayList<>();
+            for (int i = 0; i < numTables; i++) {
+                OffHeapStringTable table = OffHeapStringTable.map(channel, position);
+                tables.add(table);
+                position += table.serializedSize();
+            }
+
+            channel.position(position);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            Map<String, LinkedHashMap<String, Double>> runMap = readRunMap(in);
+            Map<String, Set<String>> entityMap = readEntityMap(in);
+            return new JobSnapshot(tables, runMap, entityMap);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Write a snapshot. The snapshot is written to a temporary file which is then moved into place, so a failed
+     * write never leaves a partial snapshot behind.
+     * @param snapshotFile Path to the snapshot.
+     * @param checksum Checksum of the inputs of the job.
+     * @param tables Tables to write.
+     * @param runMap Entity run.
+     * @param entityMap Entity file.
+     */
+    public static void write(@NotNull String snapshotFile,
+                             long checksum,
+                             @NotNull List<StringTable> tables,
+                             @NotNull Map<String, LinkedHashMap<String, Double>> runMap,
+                             @NotNull Map<String, Set<String>> entityMap) {
+        Path path = Paths.get(snapshotFile).toAbsolutePath();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4);
+            header.putLong(MAGIC).putInt(VERSION).putLong(checksum).putInt(tables.size());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            for (StringTable table : tables) {
+                OffHeapStringTable.copyOf(table).writeTo(channel);
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            writeRunMap(out, runMap);
+            writeEntityMap(out, entityMap);
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeRunMap(@NotNull DataOutputStream out,
+                                    @NotNull Map<String, LinkedHashMap<String, Double>> runMap) throws IOException {
+        out.writeInt(runMap.size());
+        for (Map.Entry<String, LinkedHashMap<String, Double>> query : runMap.entrySet()) {
+            out.writeUTF(query.getKey());
+            out.writeInt(query.getValue().size());
+            for (Map.Entry<String, Double> entity : query.getValue().entrySet()) {
+                out.writeUTF(entity.getKey());
+                out.writeDouble(entity.getValue());
+            }
+        }
+    }
+
+    @NotNull
+    private static Map<String, LinkedHashMap<String, Double>> readRunMap(@NotNull DataInputStream in) throws IOException {
+        int numQueries = in.readInt();
+        Map<String, LinkedHashMap<String, Double>> runMap = new HashMap<>();
+        for (int q = 0; q < numQueries; q++) {
+            String queryId = in.readUTF();
+            int numEntities = in.readInt();
+            LinkedHashMap<String, Double> rankings = new LinkedHashMap<>();
+            for (int e = 0; e < numEntities; e++) {
+                String entityId = in.readUTF();
+                rankings.put(entityId, in.readDouble());
+            }
+            runMap.put(queryId, rankings);
+        }
+        return runMap;
+    }
+
+    private static void writeEntityMap(@NotNull DataOutputStream out,
+                                       @NotNull Map<String, Set<String>> entityMap) throws IOException {
+        out.writeInt(entityMap.size());
+        for (Map.Entry<String, Set<String>> query : entityMap.entrySet()) {
+            out.writeUTF(query.getKey());
+            out.writeInt(query.getValue().size());
+            for (String entityId : query.getValue()) {
+                out.writeUTF(entityId);
+            }
+        }
+    }
+
+    @NotNull
+    private static Map<String, Set<String>> readEntityMap(@NotNull DataInputStream in) throws IOException {
+        int numQueries = in.readInt();
+        Map<String, Set<String>> entityMap = new HashMap<>();
+        for (int q = 0; q < numQueries; q++) {
+            String queryId = in.readUTF();
+            int numEntities = in.readInt();
+            Set<String> entitySet = new HashSet<>();
+            for (int e = 0; e < numEntities; e++) {
+                entitySet.add(in.readUTF());
+            }
+            entityMap.put(queryId, entitySet);
+        }
+        return entityMap;
+    }
+}
@@ -0,0 +1,107 @@
+package help;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent latency histogram with log-linear buckets.
+ * Every power of two is split into 32 buckets, so a recorded value is off by at most about 3%. Recording is a
+ * couple of atomic increments and never allocates, so it can be left on in production runs.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Record a latency.
+     * @param nanos Latency in nanoseconds.
+     */
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(index(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSumNanos() / n;
+    }
+
+    /**
+     * Get a percentile of the recorded latencies.
+     * @param percentile Percentile in [0, 100].
+     * @return Upper bound of the bucket containing the percentile, in nanoseconds.
+     */
+
+    public long getPercentileNanos(double percentile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(lowerBound(i + 1) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Clear the histogram. Not atomic with respect to concurrent recording.
+     */
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private static int index(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int mantissa = (int) (value >>> shift) & (SUB - 1);
+        return (shift + 1) * SUB + mantissa;
+    }
+
+    private static long lowerBound(int index) {
+        int block = index / SUB;
+        int mantissa = index % SUB;
+        return block == 0 ? mantissa : ((long) (SUB + mantissa)) << (block - 1);
+    }
+}
@@ -0,0 +1,217 @@
+package help;
+
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.SmallFloat;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Scores documents given as term vectors (the terms of the EnglishAnalyzer with their frequencies) for a disjunction
+ * of weighted terms (as built by RankingHelper.toBooleanQuery() and toRm3Query()) with the statistics of the documents
+ * themselves, exactly as the LMJelinekMercerSimilarity(0.4) of an in-memory index of those documents does.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+final class LocalLmScorer {
+
+    private static final float LAMBDA = 0.4f;
+
+    private final Map<String, Integer> termIds;
+    private final float[] boosts;
+
+    private LocalLmScorer(Map<String, Integer> termIds, float[] boosts) {
+        this.termIds = termIds;
+        this.boosts = boosts;
+    }
+
+    /**
+     * Make a scorer for a query.
+     * @param query Disjunction of (boosted) TermQuery on the "Text" field.
+     * @return LocalLmScorer, or null if the query is not a disjunction of terms.
+     */
+
+    @Nullable
+    static LocalLmScorer of(@NotNull BooleanQuery query) {
+        Map<String, Integer> termIds = new HashMap<>();
+        List<Double> boosts = new ArrayList<>();
+        for (BooleanClause clause : query.clauses()) {
+            if (clause.getOccur() != BooleanClause.Occur.SHOULD) {
+                return null;
+            }
+            Query q = clause.getQuery();
+            float boost = 1.0f;
+            if (q instanceof BoostQuery) {
+                boost = ((BoostQuery) q).getBoost();
+                q = ((BoostQuery) q).getQuery();
+            }
+            if (!(q instanceof TermQuery) || !((TermQuery) q).getTerm().field().equals("Text")) {
+                return null;
+            }
+            // Repeated terms are merged by summing their boosts in double and rounding the sum to a float once, as
+            // BooleanQuery.rewrite() does
+            String term = ((TermQuery) q).getTerm().text();
+            Integer termId = termIds.putIfAbsent(term, termIds.size());
+            if (termId == null) {
+                boosts.add((double) boost);
+            } else {
+                boosts.set(termId, boosts.get(termId) + boost);
+            }
+        }
+        float[] termBoosts = new float[boosts.size()];
+        for (int t = 0; t < termBoosts.length; t++) {
+            termBoosts[t] = boosts.get(t).floatValue();
+        }
+        return new LocalLmScorer(termIds, termBoosts);
+    }
+
+    /**
+     * Score a set of documents given as text term vectors.
+     * @param vectors Term vectors of the documents ("term freq term freq ..."), in index order.
+     * @return Score of every document, or NaN for the documents which match no term of the query.
+     */
+
+    @NotNull
+    float[] score(@NotNull List<String> vectors) {
+        int[][] freqs = new int[vectors.size()][];
+        int[] lengths = new int[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            String vector = vectors.get(i);
+            freqs[i] = new int[termIds.size()];
+            if (!vector.isEmpty()) {
+                String[] parts = vector.split(" ");
+                for (int p = 0; p + 1 < parts.length; p += 2) {
+                    int freq = Integer.parseInt(parts[p + 1]);
+                    lengths[i] += freq;
+                    Integer termId = termIds.get(parts[p]);
+                    if (termId != null) {
+                        freqs[i][termId] = freq;
+                    }
+                }
+            }
+        }
+        return score(freqs, lengths);
+    }
+
+    /**
+     * Score a set of documents given as decoded term vectors.
+     * @param vectors Term vectors of the documents, in index order.
+     * @param dictionary Id of a term in the vectors, or -1 if no vector has the term.
+     * @return Score of every document, or NaN for the documents which match no term of the query.
+     */
+
+    @NotNull
+    float[] score(@NotNull List<TermVector> vectors, @NotNull ToIntFunction<String> dictionary) {
+        Map<Integer, Integer> queryTerms = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : termIds.entrySet()) {
+            int id = dictionary.applyAsInt(entry.getKey());
+            if (id >= 0) {
+                queryTerms.put(id, entry.getValue());
+            }
+        }
+        int[][] freqs = new int[vectors.size()][];
+        int[] lengths = new int[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            TermVector vector = vectors.get(i);
+            freqs[i] = new int[termIds.size()];
+            lengths[i] = vector.length;
+            for (int k = 0; k < vector.terms.length; k++) {
+                Integer termId = queryTerms.get(vector.terms[k]);
+                if (termId != null) {
+                    freqs[i][termId] = vector.freqs[k];
+                }
+            }
+        }
+        return score(freqs, lengths);
+    }
+
+    /**
+     * Score documents from the frequencies of the query terms and their lengths, with the statistics of the set.
+     */
+
+    @NotNull
+    private float[] score(@NotNull int[][] freqs, @NotNull int[] lengths) {
+        long[] totalTermFreqs = new long[termIds.size()];
+        long numTokens = 0;
+        for (int i = 0; i < freqs.length; i++) {
+            for (int t = 0; t < totalTermFreqs.length; t++) {
+                totalTermFreqs[t] += freqs[i][t];
+            }
+            numTokens += lengths[i];
+        }
+
+        double[] collectionProbability = new double[termIds.size()];
+        for (int t = 0; t < collectionProbability.length; t++) {
+            collectionProbability[t] = (totalTermFreqs[t] + 1D) / (numTokens + 1D);
+        }
+
+        float[] scores = new float[freqs.length];
+        for (int i = 0; i < freqs.length; i++) {
+            // Document lengths are encoded in one byte in the norms of the index
+            double docLen = SmallFloat.byte4ToInt(SmallFloat.intToByte4(lengths[i]));
+            double score = 0;
+            boolean matches = false;
+            for (int t = 0; t < collectionProbability.length; t++) {
+                if (freqs[i][t] > 0) {
+                    matches = true;
+                    // The similarity gets the freq as a double: (1 - LAMBDA) * freq must not be rounded to a float.
+                    // Every term score is rounded to a float and the sum to a float, as in the BooleanQuery scorers.
+                    score += (float) (boosts[t] * Math.log(1 + ((1 - LAMBDA) * (double) freqs[i][t] / docLen)
+                            / (LAMBDA * collectionProbability[t])));
+                }
+            }
+            scores[i] = matches ? (float) score : Float.NaN;
+        }
+        return scores;
+    }
+
+    /**
+     * Rank the scored documents as TopDocs does: by decreasing score, then by increasing position.
+     * @param scores Scores returned by score().
+     * @param numDocs Number of hits needed.
+     * @return Positions of the top matching documents.
+     */
+
+    @NotNull
+    static int[] top(@NotNull float[] scores, int numDocs) {
+        List<Integer> hits = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            if (!Float.isNaN(scores[i])) {
+                hits.add(i);
+            }
+        }
+        hits.sort((i1, i2) -> scores[i1] != scores[i2] ? Float.compare(scores[i2], scores[i1]) : Integer.compare(i1, i2));
+        int[] top = new int[Math.min(Math.max(1, numDocs), hits.size())];
+        for (int rank = 0; rank < top.length; rank++) {
+            top[rank] = hits.get(rank);
+        }
+        return top;
+    }
+
+    /**
+     * Terms of a document with their frequencies, in order of first occurrence.
+     */
+
+    static final class TermVector {
+        final int[] terms;
+        final int[] freqs;
+        final int length;
+
+        TermVector(@NotNull int[] terms, @NotNull int[] freqs) {
+            this.terms = terms;
+            this.freqs = freqs;
+            int length = 0;
+            for (int freq : freqs) {
+                length += freq;
+            }
+            this.length = length;
+        }
+    }
+}
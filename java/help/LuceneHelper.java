@@ -2,6 +2,7 @@ package help;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.*;
@@ -13,16 +14,24 @@ import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LuceneHelper {
 
+    private static final LatencyHistogram STORED_FIELDS = Metrics.timer("stored_fields");
+    private static final LongAdder ID_LOOKUPS = Metrics.counter("id_lookups");
+    private static final LongAdder ID_LOOKUP_MISSES = Metrics.counter("id_lookup_misses");
+
     @Nullable
     public static Similarity getSimilarity(@NotNull String similarityStr) {
 
@@ -54,6 +63,9 @@ public class LuceneHelper {
             e.printStackTrace();
         }
         assert reader != null;
+        if (IndexOptimizer.isOptimized(reader)) {
+            System.out.println("Index " + indexDir + " has the optimized layout.");
+        }
         IndexSearcher searcher = new IndexSearcher(reader);
         searcher.setSimilarity(similarity);
         return searcher;
@@ -64,29 +76,182 @@ public class LuceneHelper {
         Term term = new Term(field,query);
         Query q = new TermQuery(term);
         TopDocs tds = searcher.search(q,1);
+        ID_LOOKUPS.increment();
 
         ScoreDoc[] retDocs = tds.scoreDocs;
         if(retDocs.length != 0) {
             return searcher.doc(retDocs[0].doc);
         }
+        ID_LOOKUP_MISSES.increment();
         return null;
     }
 
+    /**
+     * Get the id of a document from the "Id" doc values of an index rewritten by IndexOptimizer, without reading
+     * its stored fields.
+     * @param searcher IndexSearcher
+     * @param docId docID
+     * @return Id, or null if the index has no "Id" doc values.
+     */
+
+    @Nullable
+    public static String getId(@NotNull IndexSearcher searcher, int docId) {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        try {
+            SortedDocValues ids = leaf.reader().getSortedDocValues("Id");
+            if (ids != null && ids.advanceExact(docId - leaf.docBase)) {
+                return ids.binaryValue().utf8ToString();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Receives the paragraphs of a segment, see {@link #forEachParagraph(LeafReaderContext, ParagraphVisitor)}.
+     */
+
+    public interface ParagraphVisitor {
+        void visit(int doc, @NotNull String paraId, @Nullable String paraEntities) throws IOException;
+    }
+
+    /**
+     * Call the visitor with the docID (in the segment), the id and the "Entities" annotations of every live document
+     * of a segment which has an id, in docID order. In an index rewritten by IndexOptimizer the id and the
+     * annotations are read from the doc values, otherwise from the stored fields.
+     * @param leaf Segment
+     * @param visitor ParagraphVisitor
+     * @throws IOException If the segment cannot be read or the visitor fails.
+     */
+
+    public static void forEachParagraph(@NotNull LeafReaderContext leaf, @NotNull ParagraphVisitor visitor)
+            throws IOException {
+        LeafReader reader = leaf.reader();
+        Bits liveDocs = reader.getLiveDocs();
+        SortedDocValues ids = reader.getSortedDocValues("Id");
+        BinaryDocValues entities = reader.getBinaryDocValues("Entities");
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                continue;
+            }
+            String paraId = null, paraEntities = null;
+            if (ids == null || entities == null) {
+                DocumentStoredFieldVisitor fields = new DocumentStoredFieldVisitor("Id", "Entities");
+                reader.document(doc, fields);
+                paraId = fields.getDocument().get("Id");
+                paraEntities = fields.getDocument().get("Entities");
+            }
+            if (ids != null) {
+                paraId = ids.advanceExact(doc) ? ids.binaryValue().utf8ToString() : null;
+            }
+            if (entities != null) {
+                paraEntities = entities.advanceExact(doc) ? entities.binaryValue().utf8ToString() : null;
+            }
+            if (paraId != null) {
+                visitor.visit(doc, paraId, paraEntities);
+            }
+        }
+    }
+
     @NotNull
     public static List<Document> toLuceneDocList(@NotNull List<String> paraList, IndexSearcher indexSearcher) {
+        long start = System.nanoTime();
+        PipelineEvents.StoredFields event = new PipelineEvents.StoredFields();
+        event.begin();
         List<Document> documentList = new ArrayList<>();
-        for (String paraId : paraList) {
-            try {
-                Document d = searchIndex("Id", paraId, indexSearcher);
-                if (d != null) {
-                    documentList.add(d);
+        for (Document d : getDocuments(paraList, indexSearcher)) {
+            if (d != null) {
+                documentList.add(d);
+            }
+        }
+        STORED_FIELDS.record(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            String[] pair = PipelineEvents.currentPair();
+            event.queryId = pair[0];
+            event.entityId = pair[1];
+            event.paragraphs = paraList.size();
+            event.found = documentList.size();
+            event.commit();
+        }
+        return documentList;
+    }
+
+    /**
+     * Load the documents with the given ids.
+     * The ids are first resolved to docIDs with one TermsEnum per segment. The stored fields are then read in
+     * increasing docID order, segment by segment, so that each compressed block of stored fields is decompressed
+     * once however the ids are ordered.
+     * @param ids Values of the "Id" field.
+     * @param searcher IndexSearcher
+     * @return Documents in the order of the ids, with null for ids that were not found.
+     */
+
+    @NotNull
+    public static Document[] getDocuments(@NotNull List<String> ids, @NotNull IndexSearcher searcher) {
+        Document[] documents = new Document[ids.size()];
+        try {
+            List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+            TermsEnum[] termsEnums = new TermsEnum[leaves.size()];
+            PostingsEnum[] postings = new PostingsEnum[leaves.size()];
+            for (int i = 0; i < leaves.size(); i++) {
+                Terms terms = leaves.get(i).reader().terms("Id");
+                termsEnums[i] = terms == null ? null : terms.iterator();
+            }
+
+            // 1. Resolve the ids to (docID, position) pairs
+            long[] order = new long[ids.size()];
+            int found = 0;
+            for (int pos = 0; pos < ids.size(); pos++) {
+                ID_LOOKUPS.increment();
+                int docId = lookup(new BytesRef(ids.get(pos)), leaves, termsEnums, postings);
+                if (docId < 0) {
+                    ID_LOOKUP_MISSES.increment();
+                } else {
+                    order[found++] = ((long) docId << 32) | pos;
                 }
-            } catch (IOException | ParseException e) {
-                e.printStackTrace();
             }
 
+            // 2. Read the stored fields in docID order and put each document back at its position
+            Arrays.sort(order, 0, found);
+            int leaf = 0;
+            for (int i = 0; i < found; i++) {
+                int docId = (int) (order[i] >>> 32);
+                while (leaf + 1 < leaves.size() && leaves.get(leaf + 1).docBase <= docId) {
+                    leaf++;
+                }
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+                leaves.get(leaf).reader().document(docId - leaves.get(leaf).docBase, visitor);
+                documents[(int) order[i]] = visitor.getDocument();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return documentList;
+        return documents;
+    }
+
+    /**
+     * Find the first live document with the id, like searchIndex() does.
+     * @return docID, or -1 if there is none.
+     */
+
+    private static int lookup(BytesRef id,
+                              @NotNull List<LeafReaderContext> leaves,
+                              @NotNull TermsEnum[] termsEnums,
+                              @NotNull PostingsEnum[] postings) throws IOException {
+        for (int i = 0; i < leaves.size(); i++) {
+            if (termsEnums[i] != null && termsEnums[i].seekExact(id)) {
+                Bits liveDocs = leaves.get(i).reader().getLiveDocs();
+                postings[i] = termsEnums[i].postings(postings[i], PostingsEnum.NONE);
+                for (int doc = postings[i].nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings[i].nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        return leaves.get(i).docBase + doc;
+                    }
+                }
+            }
+        }
+        return -1;
     }
 
     /**
@@ -112,6 +277,8 @@ public class LuceneHelper {
             Directory dir = new ByteBuffersDirectory();
             IndexWriterConfig conf = new IndexWriterConfig(analyzer);
             conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            // Segments are never merged, so the docIDs follow the order in which the documents were added
+            conf.setMergePolicy(NoMergePolicy.INSTANCE);
             IndexWriter iw = null;
             try {
                 iw = new IndexWriter(dir, conf);
@@ -0,0 +1,165 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timers and counters for the stages of a job.
+ * Timers are LatencyHistograms and counters are LongAdders, so recording is cheap enough to be always on. Callers
+ * look them up once and keep them in static fields.
+ * If -Dmetrics=prefix is set, all metrics are written to prefix.json and prefix.prom (Prometheus text format) every
+ * -DmetricsInterval seconds (default 60) and when the JVM exits.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class Metrics {
+
+    private static final String NAMESPACE = "bert_er";
+    private static final String OUT_PREFIX = System.getProperty("metrics");
+    private static final long INTERVAL_SECONDS = Long.getLong("metricsInterval", 60);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private static final Map<String, LatencyHistogram> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService reporter = null;
+
+    private Metrics() {
+    }
+
+    /**
+     * Get (or create) a timer.
+     * @param name Name of the timer, in snake_case.
+     * @return Timer
+     */
+
+    @NotNull
+    public static LatencyHistogram timer(@NotNull String name) {
+        return TIMERS.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Get (or create) a counter.
+     * @param name Name of the counter, in snake_case.
+     * @return Counter
+     */
+
+    @NotNull
+    public static LongAdder counter(@NotNull String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Start writing the metrics files, if -Dmetrics is set. Calling this more than once has no effect.
+     */
+
+    public static synchronized void start() {
+        if (OUT_PREFIX == null || reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(Metrics::dump, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dump, "metrics-final-dump"));
+        System.out.println("Writing metrics to " + OUT_PREFIX + ".json and " + OUT_PREFIX + ".prom every " +
+                INTERVAL_SECONDS + " s.");
+    }
+
+    /**
+     * Write the metrics files now.
+     */
+
+    public static synchronized void dump() {
+        if (OUT_PREFIX == null) {
+            return;
+        }
+        try {
+            write(Paths.get(OUT_PREFIX + ".json"), toJson());
+            write(Paths.get(OUT_PREFIX + ".prom"), toPrometheus());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void write(@NotNull Path file, @NotNull String contents) throws IOException {
+        Path tmp = file.toAbsolutePath().resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(contents);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @NotNull
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"timestamp_ms\": ").append(System.currentTimeMillis())
+                .append(",\n  \"uptime_ms\": ").append(ManagementFactory.getRuntimeMXBean().getUptime())
+                .append(",\n  \"timers\": {");
+        String sep = "\n";
+        for (Map.Entry<String, LatencyHistogram> timer : TIMERS.entrySet()) {
+            LatencyHistogram h = timer.getValue();
+            sb.append(sep).append("    \"").append(timer.getKey()).append("\": {")
+                    .append("\"count\": ").append(h.getCount())
+                    .append(", \"sum_ms\": ").append(millis(h.getSumNanos()))
+                    .append(", \"mean_ms\": ").append(millis((long) h.getMeanNanos()));
+            for (double q : QUANTILES) {
+                sb.append(", \"p").append(Math.round(q * 100)).append("_ms\": ").append(millis(h.getPercentileNanos(q * 100)));
+            }
+            sb.append(", \"max_ms\": ").append(millis(h.getMaxNanos())).append('}');
+            sep = ",\n";
+        }
+        sb.append("\n  },\n  \"counters\": {");
+        sep = "\n";
+        for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            sb.append(sep).append("    \"").append(counter.getKey()).append("\": ").append(counter.getValue().sum());
+            sep = ",\n";
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    @NotNull
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> timer : TIMERS.entrySet()) {
+            String name = NAMESPACE + "_" + timer.getKey() + "_seconds";
+            LatencyHistogram h = timer.getValue();
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (double q : QUANTILES) {
+                sb.append(name).append("{quantile=\"").append(q).append("\"} ")
+                        .append(seconds(h.getPercentileNanos(q * 100))).append('\n');
+            }
+            sb.append(name).append("_sum ").append(seconds(h.getSumNanos())).append('\n');
+            sb.append(name).append("_count ").append(h.getCount()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            String name = NAMESPACE + "_" + counter.getKey() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
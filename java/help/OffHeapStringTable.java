@@ -0,0 +1,469 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A read-only, open-addressing String to String table kept outside the Java heap.
+ * Entries are stored as UTF-8 bytes in direct ByteBuffer pages: [hash][key length][value length][key][value].
+ * The slot array holds (page, offset) references to the entries and is probed linearly.
+ * A table with millions of entries is only a handful of objects for the garbage collector, unlike a HashMap
+ * which holds two Strings and a node per entry.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public final class OffHeapStringTable implements StringTable {
+
+    private static final int HEADER_SIZE = 12;
+    private static final int MIN_PAGE_SIZE = 1 << 16;
+    private static final int MAX_PAGE_SIZE = 1 << 26;
+    private static final int MAX_ENTRIES = 1 << 26;
+
+    private final ByteBuffer[] pages;
+    private final LongBuffer slots;
+    private final int mask;
+    private final int size;
+
+    private OffHeapStringTable(ByteBuffer[] pages, LongBuffer slots, int size) {
+        this.pages = pages;
+        this.slots = slots;
+        this.mask = slots.capacity() - 1;
+        this.size = size;
+    }
+
+    @Nullable
+    @Override
+    public String get(String key) {
+        long ref = find(key.getBytes(StandardCharsets.UTF_8));
+        if (ref < 0) {
+            return null;
+        }
+        ByteBuffer page = pages[page(ref)];
+        int pos = offset(ref);
+        int keyLen = page.getInt(pos + 4);
+        int valueLen = page.getInt(pos + 8);
+        return decode(page, pos + HEADER_SIZE + keyLen, valueLen);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return find(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(@NotNull BiConsumer<String, String> action) {
+        for (int slot = 0; slot < slots.capacity(); slot++) {
+            long ref = slots.get(slot) - 1;
+            if (ref >= 0) {
+                ByteBuffer page = pages[page(ref)];
+                int pos = offset(ref);
+                int keyLen = page.getInt(pos + 4);
+                int valueLen = page.getInt(pos + 8);
+                action.accept(decode(page, pos + HEADER_SIZE, keyLen),
+                        decode(page, pos + HEADER_SIZE + keyLen, valueLen));
+            }
+        }
+    }
+
+    /**
+     * Number of bytes held outside the heap by this table.
+     * @return Size in bytes.
+     */
+    public long offHeapBytes() {
+        long bytes = (long) slots.capacity() * Long.BYTES;
+        for (ByteBuffer page : pages) {
+            bytes += page.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Copy a table into an OffHeapStringTable.
+     * @param table StringTable
+     * @return The table itself if it is already off-heap, otherwise an off-heap copy.
+     */
+    @NotNull
+    public static OffHeapStringTable copyOf(@NotNull StringTable table) {
+        if (table instanceof OffHeapStringTable) {
+            return (OffHeapStringTable) table;
+        }
+        Builder builder = new Builder();
+        table.forEach(builder::put);
+        return builder.build();
+    }
+
+    /**
+     * Number of bytes written by {@link #writeTo(FileChannel)}.
+     * @return Size in bytes.
+     */
+    public long serializedSize() {
+        return 12 + 4L * pages.length + offHeapBytes();
+    }
+
+    /**
+     * Write the table at the current position of the channel.
+     * Layout: [slot count][size][page count][page sizes][slots][pages]. The layout is the in-memory layout, so the
+     * table can be mapped back with {@link #map(FileChannel, long)} without parsing.
+     * @param channel Channel to write to.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void writeTo(@NotNull FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12 + 4 * pages.length);
+        header.putInt(slots.capacity()).putInt(size).putInt(pages.length);
+        for (ByteBuffer page : pages) {
+            header.putInt(page.capacity());
+        }
+        header.flip();
+        writeFully(channel, header);
+
+        ByteBuffer slotBytes = ByteBuffer.allocate(Math.min(slots.capacity(), 1 << 16) * Long.BYTES);
+        for (int slot = 0; slot < slots.capacity(); slot++) {
+            if (!slotBytes.hasRemaining()) {
+                slotBytes.flip();
+                writeFully(channel, slotBytes);
+                slotBytes.clear();
+            }
+            slotBytes.putLong(slots.get(slot));
+        }
+        slotBytes.flip();
+        writeFully(channel, slotBytes);
+
+        for (ByteBuffer page : pages) {
+            ByteBuffer view = page.duplicate();
+            view.clear();
+            writeFully(channel, view);
+        }
+    }
+
+    /**
+     * Map a table written by {@link #writeTo(FileChannel)} read-only.
+     * @param channel Channel to map from.
+     * @param position Position of the table in the channel.
+     * @return OffHeapStringTable backed by the mapped file.
+     * @throws IOException If the channel cannot be read or mapped.
+     */
+    @NotNull
+    public static OffHeapStringTable map(@NotNull FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        readFully(channel, header, position);
+        int capacity = header.getInt(0);
+        int size = header.getInt(4);
+        int numPages = header.getInt(8);
+        position += 12;
+
+        ByteBuffer pageSizes = ByteBuffer.allocate(4 * numPages);
+        readFully(channel, pageSizes, position);
+        position += 4L * numPages;
+
+        LongBuffer slots = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) capacity * Long.BYTES).asLongBuffer();
+        position += (long) capacity * Long.BYTES;
+
+        ByteBuffer[] pages = new ByteBuffer[numPages];
+        for (int p = 0; p < numPages; p++) {
+            int pageSize = pageSizes.getInt(4 * p);
+            pages[p] = channel.map(FileChannel.MapMode.READ_ONLY, position, pageSize);
+            position += pageSize;
+        }
+        return new OffHeapStringTable(pages, slots, size);
+    }
+
+    /**
+     * Write the table to a file of its own, after a header with the type and version of the file.
+     * @param file File to write.
+     * @param magic Type of the file.
+     * @param version Version of the file format.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(@NotNull Path file, long magic, int version) throws IOException {
+        save(file, magic, version, Collections.singletonList(this));
+    }
+
+    /**
+     * Write tables one after the other to a file, after a header with the type and version of the file.
+     * @param file File to write.
+     * @param magic Type of the file.
+     * @param version Version of the file format.
+     * @param tables Tables to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(@NotNull Path file, long magic, int version, @NotNull List<OffHeapStringTable> tables)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putLong(magic).putInt(version);
+            header.flip();
+            writeFully(channel, header);
+            for (OffHeapStringTable table : tables) {
+                table.writeTo(channel);
+            }
+        }
+    }
+
+    /**
+     * Map a table written by {@link #save(Path, long, int)} read-only.
+     * @param file File to map.
+     * @param magic Expected type of the file.
+     * @param version Expected version of the file format.
+     * @return OffHeapStringTable backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not of the expected type and version.
+     */
+    @NotNull
+    public static OffHeapStringTable load(@NotNull Path file, long magic, int version) throws IOException {
+        return load(file, magic, version, 1).get(0);
+    }
+
+    /**
+     * Map the tables written by {@link #save(Path, long, int, List)} read-only.
+     * @param file File to map.
+     * @param magic Expected type of the file.
+     * @param version Expected version of the file format.
+     * @param count Number of tables in the file.
+     * @return The tables, backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not of the expected type and version.
+     */
+    @NotNull
+    public static List<OffHeapStringTable> load(@NotNull Path file, long magic, int version, int count)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            readFully(channel, header, 0);
+            if (header.getLong(0) != magic || header.getInt(8) != version) {
+                throw new IOException("Unexpected file type or version: " + file);
+            }
+            // The mappings stay valid after the channel is closed
+            List<OffHeapStringTable> tables = new ArrayList<>(count);
+            long position = 12;
+            for (int t = 0; t < count; t++) {
+                OffHeapStringTable table = map(channel, position);
+                tables.add(table);
+                position += table.serializedSize();
+            }
+            return tables;
+        }
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated table at position " + position);
+            }
+        }
+    }
+
+    /**
+     * Find the entry for a key.
+     * @return Reference to the entry, or -1 if the key is not in the table.
+     */
+    private long find(byte[] key) {
+        int hash = hash(key);
+        int slot = hash & mask;
+        while (true) {
+            long ref = slots.get(slot) - 1;
+            if (ref < 0) {
+                return -1;
+            }
+            if (keyEquals(pages, ref, hash, key)) {
+                return ref;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int page(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    private static int offset(long ref) {
+        return (int) ref;
+    }
+
+    private static boolean keyEquals(@NotNull ByteBuffer[] pages, long ref, int hash, @NotNull byte[] key) {
+        ByteBuffer page = pages[page(ref)];
+        int pos = offset(ref);
+        if (page.getInt(pos) != hash || page.getInt(pos + 4) != key.length) {
+            return false;
+        }
+        pos += HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (page.get(pos + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean keyEquals(@NotNull ByteBuffer[] pages, long ref1, long ref2) {
+        ByteBuffer page = pages[page(ref2)];
+        int pos = offset(ref2);
+        byte[] key = new byte[page.getInt(pos + 4)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = page.get(pos + HEADER_SIZE + i);
+        }
+        return keyEquals(pages, ref1, page.getInt(pos), key);
+    }
+
+    @NotNull
+    private static String decode(@NotNull ByteBuffer page, int pos, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer view = page.duplicate();
+        view.position(pos);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a hash of the key bytes with a final avalanche so that the low bits can index the slots.
+     */
+    private static int hash(@NotNull byte[] key) {
+        int h = 0x811c9dc5;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /**
+     * Appends entries to off-heap pages. A Builder is not thread-safe; to load in parallel use one Builder per
+     * thread and combine them with {@link #build(List)}.
+     */
+    public static class Builder implements BiConsumer<String, String> {
+        private final List<ByteBuffer> pages = new ArrayList<>();
+        private ByteBuffer current = null;
+        private long[] refs = new long[1024];
+        private int count = 0;
+
+        @Override
+        public void accept(String key, String value) {
+            put(key, value);
+        }
+
+        public Builder put(@NotNull String key, @NotNull String value) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            int entrySize = HEADER_SIZE + keyBytes.length + valueBytes.length;
+
+            if (current == null || current.remaining() < entrySize) {
+                // Pages grow geometrically so that small tables do not reserve a large page
+                int pageSize = current == null ? MIN_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, current.capacity() * 2);
+                current = ByteBuffer.allocateDirect(Math.max(pageSize, entrySize));
+                pages.add(current);
+            }
+
+            int offset = current.position();
+            current.putInt(hash(keyBytes)).putInt(keyBytes.length).putInt(valueBytes.length);
+            current.put(keyBytes).put(valueBytes);
+
+            if (count == refs.length) {
+                refs = Arrays.copyOf(refs, count * 2);
+            }
+            refs[count++] = ((long) (pages.size() - 1) << 32) | offset;
+            return this;
+        }
+
+        @NotNull
+        public OffHeapStringTable build() {
+            return OffHeapStringTable.build(Collections.singletonList(this));
+        }
+    }
+
+    /**
+     * Combine builders into a table. If a key was added more than once, the last value (in list order) wins.
+     * @param builders Builders in the order in which their entries were read.
+     * @return OffHeapStringTable
+     */
+    @NotNull
+    public static OffHeapStringTable build(@NotNull List<Builder> builders) {
+        List<ByteBuffer> pageList = new ArrayList<>();
+        int[] pageBase = new int[builders.size()];
+        long total = 0;
+        for (int b = 0; b < builders.size(); b++) {
+            Builder builder = builders.get(b);
+            pageBase[b] = pageList.size();
+            for (int p = 0; p < builder.pages.size(); p++) {
+                ByteBuffer page = builder.pages.get(p);
+                // Release the unused tail of the last page
+                pageList.add(p == builder.pages.size() - 1 ? trim(page) : page);
+            }
+            total += builder.count;
+        }
+        if (total > MAX_ENTRIES) {
+            throw new IllegalArgumentException("Too many entries for an OffHeapStringTable: " + total);
+        }
+
+        ByteBuffer[] pages = pageList.toArray(new ByteBuffer[0]);
+        int capacity = 16;
+        while (capacity < total * 2) {
+            capacity <<= 1;
+        }
+        LongBuffer slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).asLongBuffer();
+        int mask = capacity - 1;
+        int size = 0;
+
+        for (int b = 0; b < builders.size(); b++) {
+            Builder builder = builders.get(b);
+            for (int i = 0; i < builder.count; i++) {
+                long ref = builder.refs[i] + ((long) pageBase[b] << 32);
+                ByteBuffer page = pages[page(ref)];
+                int slot = page.getInt(offset(ref)) & mask;
+                while (true) {
+                    long existing = slots.get(slot) - 1;
+                    if (existing < 0) {
+                        slots.put(slot, ref + 1);
+                        size++;
+                        break;
+                    }
+                    if (keyEquals(pages, existing, ref)) {
+                        slots.put(slot, ref + 1);
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+        }
+        return new OffHeapStringTable(pages, slots, size);
+    }
+
+    @NotNull
+    private static ByteBuffer trim(@NotNull ByteBuffer page) {
+        if (page.position() == page.capacity()) {
+            return page;
+        }
+        ByteBuffer trimmed = ByteBuffer.allocateDirect(page.position());
+        ByteBuffer used = page.duplicate();
+        used.flip();
+        trimmed.put(used);
+        return trimmed;
+    }
+}
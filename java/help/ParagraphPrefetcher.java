@@ -0,0 +1,143 @@
+package help;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Read-ahead of the paragraphs of the next entities of a query.
+ * While the paragraphs of one entity are ranked and scored, the paragraphs of the next -Dprefetch=N entities are
+ * resolved and loaded from the paragraph index by a shared pool of -DprefetchThreads I/O threads (default 4). At
+ * most N entities are loaded ahead of the one being processed, so the memory used is bounded. Useful when the
+ * paragraph index does not fit in the page cache.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class ParagraphPrefetcher implements AutoCloseable {
+
+    public static final int DEPTH = Integer.getInteger("prefetch", 0);
+    private static final int THREADS = Integer.getInteger("prefetchThreads", 4);
+
+    private static final LatencyHistogram PREFETCH_WAIT = Metrics.timer("prefetch_wait");
+    private static final LongAdder PREFETCH_HITS = Metrics.counter("prefetch_hits");
+    private static final LongAdder PREFETCH_MISSES = Metrics.counter("prefetch_misses");
+    private static ExecutorService pool = null;
+
+    private final IndexSearcher searcher;
+    private final List<String> entityOrder;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Function<String, List<String>> paraLists;
+    private final Map<String, Future<List<Document>>> loading = new HashMap<>();
+    private int submitted = 0;
+    private int dropped = 0;
+
+    /**
+     * Start reading ahead.
+     * @param searcher IndexSearcher of the paragraph index.
+     * @param entityOrder Entities in the order in which they will be processed.
+     * @param paraLists Function from entity_id --> List[passage_id]; may return null.
+     */
+
+    public ParagraphPrefetcher(IndexSearcher searcher,
+                               @NotNull Collection<String> entityOrder,
+                               @NotNull Function<String, List<String>> paraLists) {
+        this.searcher = searcher;
+        this.entityOrder = new ArrayList<>(entityOrder);
+        this.paraLists = paraLists;
+        for (int i = 0; i < this.entityOrder.size(); i++) {
+            positions.putIfAbsent(this.entityOrder.get(i), i);
+        }
+        submitUpTo(DEPTH);
+    }
+
+    /**
+     * Get the paragraphs of an entity, waiting for them if they are still being loaded, and read ahead past it.
+     * @param entityId Entity
+     * @return Paragraphs of the entity, or null if they were not read ahead.
+     */
+
+    @Nullable
+    public List<Document> take(String entityId) {
+        Integer position = positions.get(entityId);
+        if (position == null) {
+            PREFETCH_MISSES.increment();
+            return null;
+        }
+        // Entities before this one were skipped by the caller: never start loading them, and drop what was loaded
+        // for them (a running load is not interrupted, as an interrupt closes the channels of an NIOFSDirectory)
+        submitted = Math.max(submitted, position);
+        for (; dropped < position; dropped++) {
+            Future<List<Document>> skipped = loading.remove(entityOrder.get(dropped));
+            if (skipped != null) {
+                skipped.cancel(false);
+            }
+        }
+        submitUpTo(position + 1 + DEPTH);
+
+        Future<List<Document>> future = loading.remove(entityId);
+        if (future == null) {
+            PREFETCH_MISSES.increment();
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Document> documents = future.get();
+            PREFETCH_HITS.increment();
+            return documents;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            e.printStackTrace();
+        } finally {
+            PREFETCH_WAIT.record(System.nanoTime() - start);
+        }
+        return null;
+    }
+
+    private void submitUpTo(int end) {
+        ExecutorService executor = getPool();
+        for (; submitted < Math.min(end, entityOrder.size()); submitted++) {
+            String entityId = entityOrder.get(submitted);
+            if (!loading.containsKey(entityId)) {
+                loading.put(entityId, executor.submit(() -> {
+                    List<String> paraList = paraLists.apply(entityId);
+                    return paraList == null
+                            ? Collections.<Document>emptyList()
+                            : LuceneHelper.toLuceneDocList(paraList, searcher);
+                }));
+            }
+        }
+    }
+
+    @NotNull
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(r, "paragraph-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Stop reading ahead.
+     */
+
+    @Override
+    public void close() {
+        for (Future<List<Document>> future : loading.values()) {
+            future.cancel(false);
+        }
+        loading.clear();
+    }
+}
@@ -0,0 +1,408 @@
+package help;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The paragraphs of the paragraph index, analyzed once offline, so that ranking and Pseudo-Relevance Feedback do not
+ * run the EnglishAnalyzer over the same paragraph text for every (query, entity) pair that touches it.
+ * Every term gets an int id, in order of first occurrence while building (so the frequent terms mostly get short
+ * ids). For every paragraph two term vectors (pairs of term id and frequency, terms in order of first occurrence)
+ * are stored as base-36 numbers separated by spaces, the two vectors separated by a tab:
+ * (1) the "Text" as the in-memory index analyzes it, to rank (see LocalLmScorer);
+ * (2) the "Text" as RankingHelper.getTermDistribution() analyzes it: pre-processed with the stop words of the build,
+ * then analyzed, for RM3. These are only used if the job has the same stop words.
+ * A pair takes 3 to 6 bytes, so a vector is about half the size of the text of its terms.
+ * Layout: [magic][version][term --> id table][id --> term table][para_id --> vectors table], all in the
+ * OffHeapStringTable layout, memory-mapped. The store should be built from the paragraph index of the job: the
+ * (query, entity) pairs with a paragraph which is not in the store are ranked from the text.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class ParagraphTermStore {
+
+    private static final long MAGIC = 0x4245525450544d31L; // "BERTPTM1"
+    private static final int VERSION = 1;
+    private static final String STOP_WORDS_KEY = "\u0000stopWords";
+    private static final LatencyHistogram PRF_TERMS = Metrics.timer("prf_terms");
+    private static final LatencyHistogram RANKING = Metrics.timer("ranking");
+    private static final LongAdder FALLBACKS = Metrics.counter("term_store_fallbacks");
+
+    private final OffHeapStringTable termTable;
+    private final OffHeapStringTable idTable;
+    private final OffHeapStringTable paraTable;
+    private final boolean feedbackTerms;
+
+    private ParagraphTermStore(OffHeapStringTable termTable,
+                               OffHeapStringTable idTable,
+                               OffHeapStringTable paraTable,
+                               boolean feedbackTerms) {
+        this.termTable = termTable;
+        this.idTable = idTable;
+        this.paraTable = paraTable;
+        this.feedbackTerms = feedbackTerms;
+    }
+
+    public int size() {
+        return paraTable.size() - 1;
+    }
+
+    public int numTerms() {
+        return termTable.size();
+    }
+
+    /**
+     * Whether the RM3 term vectors of the store can be used, i.e. whether the store was built with the stop words
+     * of the job.
+     * @return True if the feedback terms are read from the store.
+     */
+
+    public boolean hasFeedbackTerms() {
+        return feedbackTerms;
+    }
+
+    /**
+     * Add the terms of a feedback paragraph to a term distribution, as RankingHelper.addTokens() does with its
+     * pre-processed text.
+     * @param paraId Paragraph
+     * @param weight Weight of the paragraph.
+     * @param termDist Term distribution.
+     * @return False if the paragraph is not in the store or the store has no usable feedback terms.
+     */
+
+    public boolean addFeedbackTerms(String paraId, double weight, @NotNull Map<String, Double> termDist) {
+        String vectors = feedbackTerms && paraId != null ? get(paraId) : null;
+        if (vectors == null) {
+            return false;
+        }
+        addVector(decode(vectors, vectors.indexOf('\t') + 1, vectors.length()), weight, termDist, new HashMap<>());
+        return true;
+    }
+
+    /**
+     * Rank paragraphs with an RM3 query expanded with Pseudo-Relevance Feedback, as RankingHelper.toBooleanQueryWithPRF()
+     * followed by rankDocuments() does with an in-memory index of the paragraphs, but from the term vectors: only the
+     * stored fields of the top hits are read, and nothing is analyzed but the query. benchmark.LocalScoringCheck
+     * compares the two rankings, hit by hit, on a synthetic data set.
+     * @param queryStr Query
+     * @param entityStr Name of the entity
+     * @param paraIds Paragraphs of the entity.
+     * @param searcher IndexSearcher of the paragraph index, to load the top hits.
+     * @param numDocs Number of hits needed
+     * @return Top hits (empty if no paragraph matches the query), or null if the paragraphs cannot be ranked with the
+     * store (the store has no usable feedback terms, a paragraph is not in the store or a top hit is not in the index).
+     */
+
+    @Nullable
+    public RankingHelper.RankedDocuments rankWithPRF(String queryStr,
+                                                     String entityStr,
+                                                     @NotNull List<String> paraIds,
+                                                     @NotNull IndexSearcher searcher,
+                                                     int numDocs) {
+        if (!feedbackTerms) {
+            return null;
+        }
+        PipelineEvents.RankDocuments event = new PipelineEvents.RankDocuments();
+        event.begin();
+        long start = System.nanoTime();
+        RankingHelper.RankedDocuments ranked = rank(queryStr, entityStr, paraIds, searcher, numDocs);
+        if (ranked == null) {
+            FALLBACKS.increment();
+            event.fallback = true;
+            RankingHelper.commit(event, paraIds.size(), 0);
+        } else {
+            RANKING.record(System.nanoTime() - start);
+            RankingHelper.commit(event, paraIds.size(), ranked.size());
+        }
+        return ranked;
+    }
+
+    @Nullable
+    private RankingHelper.RankedDocuments rank(String queryStr,
+                                               String entityStr,
+                                               @NotNull List<String> paraIds,
+                                               @NotNull IndexSearcher searcher,
+                                               int numDocs) {
+        // The paragraphs in the order of the in-memory index. A paragraph which is not in the store may still be in
+        // the index, so the pair is left to the text path. The text vectors are decoded once for both rankings, the
+        // feedback vectors only for the feedback set.
+        List<String> stored = new ArrayList<>(paraIds.size());
+        List<LocalLmScorer.TermVector> textVectors = new ArrayList<>(paraIds.size());
+        for (String paraId : paraIds) {
+            String vectors = get(paraId);
+            if (vectors == null) {
+                return null;
+            }
+            stored.add(vectors);
+            textVectors.add(decode(vectors, 0, vectors.indexOf('\t')));
+        }
+
+        // 1. Rank with the query and entity terms only
+        LocalLmScorer initialScorer = LocalLmScorer.of(RankingHelper.toBooleanQuery(queryStr, entityStr));
+        if (initialScorer == null) {
+            return null;
+        }
+        float[] feedbackScores = initialScorer.score(textVectors, this::termId);
+        int[] feedback = LocalLmScorer.top(feedbackScores, 100);
+        if (feedback.length == 0) {
+            return RankingHelper.RankedDocuments.empty();
+        }
+
+        // 2. Expand the query with RM3 terms, as RankingHelper.getTermDistribution() does
+        long prfStart = System.nanoTime();
+        float normalizer = 0.0f;
+        for (int i : feedback) {
+            normalizer += (double) feedbackScores[i];
+        }
+        Map<String, Double> termDist = new HashMap<>();
+        Map<Integer, String> terms = new HashMap<>();
+        for (int i : feedback) {
+            String vectors = stored.get(i);
+            addVector(decode(vectors, vectors.indexOf('\t') + 1, vectors.length()),
+                    (double) feedbackScores[i] / normalizer, termDist, terms);
+        }
+        BooleanQuery expandedQuery;
+        try {
+            expandedQuery = RankingHelper.toBooleanQuery(
+                    RankingHelper.tokenizeQuery(queryStr, "Text", new EnglishAnalyzer()),
+                    RankingHelper.sortByValueDescending(termDist));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        PRF_TERMS.record(System.nanoTime() - prfStart);
+
+        // 3. Rank again and load the top hits
+        LocalLmScorer expandedScorer = LocalLmScorer.of(expandedQuery);
+        if (expandedScorer == null) {
+            return null;
+        }
+        float[] scores = expandedScorer.score(textVectors, this::termId);
+        int[] top = LocalLmScorer.top(scores, numDocs);
+        List<String> topIds = new ArrayList<>(top.length);
+        int[] docs = new int[top.length];
+        float[] topScores = new float[top.length];
+        for (int rank = 0; rank < top.length; rank++) {
+            topIds.add(paraIds.get(top[rank]));
+            docs[rank] = rank;
+            topScores[rank] = scores[top[rank]];
+        }
+        Document[] documents = LuceneHelper.getDocuments(topIds, searcher);
+        for (Document document : documents) {
+            if (document == null) {
+                return null;
+            }
+        }
+        return new RankingHelper.RankedDocuments(docs, topScores, null, Arrays.asList(documents));
+    }
+
+    @Nullable
+    private String get(@NotNull String paraId) {
+        return paraId.equals(STOP_WORDS_KEY) ? null : paraTable.get(paraId);
+    }
+
+    /**
+     * Id of a term, or -1 if no paragraph has it.
+     */
+
+    private int termId(@NotNull String term) {
+        String id = termTable.get(term);
+        return id == null ? -1 : Integer.parseInt(id, Character.MAX_RADIX);
+    }
+
+    /**
+     * Add the weight of a paragraph to its terms, once per occurrence. The terms are added in the order of their
+     * first occurrence and the weights are summed one by one, so the distribution is the same as with the text.
+     * The terms looked up are cached in the map of terms.
+     */
+
+    private void addVector(@NotNull LocalLmScorer.TermVector vector,
+                           double weight,
+                           @NotNull Map<String, Double> termDist,
+                           @NotNull Map<Integer, String> terms) {
+        for (int k = 0; k < vector.terms.length; k++) {
+            String term = terms.computeIfAbsent(vector.terms[k],
+                    id -> idTable.get(Integer.toString(id, Character.MAX_RADIX)));
+            if (term == null) {
+                continue;
+            }
+            Double sum = termDist.get(term);
+            for (int f = 0; f < vector.freqs[k]; f++) {
+                sum = sum == null ? weight : sum + weight;
+            }
+            termDist.put(term, sum);
+        }
+    }
+
+    /**
+     * Decode the term vector in vectors[from, to).
+     */
+
+    @NotNull
+    private static LocalLmScorer.TermVector decode(@NotNull String vectors, int from, int to) {
+        int numbers = from == to ? 0 : 1;
+        for (int i = from; i < to; i++) {
+            if (vectors.charAt(i) == ' ') {
+                numbers++;
+            }
+        }
+        int[] terms = new int[numbers / 2];
+        int[] freqs = new int[numbers / 2];
+        int n = 0, value = 0;
+        for (int i = from; i < to; i++) {
+            char c = vectors.charAt(i);
+            if (c == ' ') {
+                n = store(terms, freqs, n, value);
+                value = 0;
+            } else {
+                value = value * Character.MAX_RADIX + Character.digit(c, Character.MAX_RADIX);
+            }
+        }
+        if (numbers > 0) {
+            store(terms, freqs, n, value);
+        }
+        return new LocalLmScorer.TermVector(terms, freqs);
+    }
+
+    private static int store(@NotNull int[] terms, @NotNull int[] freqs, int n, int value) {
+        if (n / 2 < terms.length) {
+            if (n % 2 == 0) {
+                terms[n / 2] = value;
+            } else {
+                freqs[n / 2] = value;
+            }
+        }
+        return n + 1;
+    }
+
+    @NotNull
+    private static String toKey(@NotNull Collection<String> stopWords) {
+        return String.join("\n", new TreeSet<>(stopWords));
+    }
+
+    /**
+     * Map a store written by {@link #build(IndexSearcher, List, Path)}.
+     * @param file Store file
+     * @param stopWords Stop words of the job.
+     * @return ParagraphTermStore backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not a paragraph term store.
+     */
+
+    @NotNull
+    public static ParagraphTermStore open(@NotNull Path file, @NotNull List<String> stopWords) throws IOException {
+        List<OffHeapStringTable> tables = OffHeapStringTable.load(file, MAGIC, VERSION, 3);
+        OffHeapStringTable paraTable = tables.get(2);
+        return new ParagraphTermStore(tables.get(0), tables.get(1), paraTable,
+                toKey(stopWords).equals(paraTable.get(STOP_WORDS_KEY)));
+    }
+
+    /**
+     * Build the store from the paragraph index. The segments of the index are analyzed in parallel.
+     * @param paraSearcher IndexSearcher of the paragraph index.
+     * @param stopWords Stop words used for the RM3 term vectors.
+     * @param file Store file to write.
+     * @throws IOException If the index cannot be read or the file cannot be written.
+     */
+
+    public static void build(@NotNull IndexSearcher paraSearcher,
+                             @NotNull List<String> stopWords,
+                             @NotNull Path file) throws IOException {
+        List<LeafReaderContext> leaves = paraSearcher.getIndexReader().leaves();
+        System.out.print("Analyzing " + paraSearcher.getIndexReader().numDocs() + " paragraphs...");
+        Map<String, Integer> termIds = new ConcurrentHashMap<>();
+        AtomicInteger nextTermId = new AtomicInteger();
+        List<OffHeapStringTable.Builder> builders = leaves
+                .parallelStream()
+                .map(leaf -> buildLeaf(leaf, stopWords, term -> termIds.computeIfAbsent(term,
+                        t -> nextTermId.getAndIncrement())))
+                .collect(Collectors.toList());
+        OffHeapStringTable.Builder stopWordsBuilder = new OffHeapStringTable.Builder();
+        stopWordsBuilder.put(STOP_WORDS_KEY, toKey(stopWords));
+        builders.add(stopWordsBuilder);
+        OffHeapStringTable paraTable = OffHeapStringTable.build(builders);
+
+        OffHeapStringTable.Builder termBuilder = new OffHeapStringTable.Builder();
+        OffHeapStringTable.Builder idBuilder = new OffHeapStringTable.Builder();
+        for (Map.Entry<String, Integer> entry : termIds.entrySet()) {
+            String id = Integer.toString(entry.getValue(), Character.MAX_RADIX);
+            termBuilder.put(entry.getKey(), id);
+            idBuilder.put(id, entry.getKey());
+        }
+        termIds.clear();
+        OffHeapStringTable termTable = termBuilder.build();
+        OffHeapStringTable idTable = idBuilder.build();
+        System.out.println("[Done].");
+
+        OffHeapStringTable.save(file, MAGIC, VERSION, Arrays.asList(termTable, idTable, paraTable));
+        System.out.println("Wrote the term vectors of " + (paraTable.size() - 1) + " paragraphs (" + termTable.size()
+                + " terms) to " + file);
+    }
+
+    @NotNull
+    private static OffHeapStringTable.Builder buildLeaf(@NotNull LeafReaderContext leaf,
+                                                        @NotNull List<String> stopWords,
+                                                        @NotNull ToIntFunction<String> termIds) {
+        OffHeapStringTable.Builder builder = new OffHeapStringTable.Builder();
+        Analyzer analyzer = new EnglishAnalyzer();
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        StringBuilder encoded = new StringBuilder();
+        try {
+            for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("Id", "Text");
+                leaf.reader().document(doc, visitor);
+                Document document = visitor.getDocument();
+                String paraId = document.get("Id");
+                String text = document.get("Text");
+                // A paragraph without text matches no query, so it is left out
+                if (paraId != null && text != null) {
+                    encoded.setLength(0);
+                    encode(AspectTermStore.termFreqs(text, analyzer), termIds, encoded);
+                    encoded.append('\t');
+                    encode(AspectTermStore.termFreqs(String.join(" ", RankingHelper.preProcess(text, stopWords)),
+                            analyzer), termIds, encoded);
+                    builder.put(paraId, encoded.toString());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return builder;
+    }
+
+    private static void encode(@NotNull Map<String, Integer> freqs,
+                               @NotNull ToIntFunction<String> termIds,
+                               @NotNull StringBuilder encoded) {
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+            if (!first) {
+                encoded.append(' ');
+            }
+            first = false;
+            encoded.append(Integer.toString(termIds.applyAsInt(entry.getKey()), Character.MAX_RADIX))
+                    .append(' ')
+                    .append(Integer.toString(entry.getValue(), Character.MAX_RADIX));
+        }
+    }
+}
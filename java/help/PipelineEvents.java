@@ -0,0 +1,125 @@
+package help;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder events for the stages of a job.
+ * The events are only recorded while a flight recording is running, e.g. started with
+ * -XX:StartFlightRecording or at run time with "jcmd &lt;pid&gt; JFR.start". When no recording is running,
+ * begin() and commit() are no-ops and the JIT removes the event objects, so the instrumentation costs close to nothing.
+ *
+ * The (query, entity) pair being processed by a thread is kept in a thread local while a Pair event is enabled, so
+ * that the stage events emitted inside the pair carry the query and entity ids too.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class PipelineEvents {
+
+    private static final ThreadLocal<String[]> CURRENT_PAIR = new ThreadLocal<>();
+
+    private PipelineEvents() {
+    }
+
+    @Name("bert_er.Pair")
+    @Label("Entity Pair")
+    @Category({"BERT-ER", "Pipeline"})
+    @Description("Making the data for one (query, entity) pair")
+    @StackTrace(false)
+    public static class Pair extends Event {
+        @Label("Query Id")
+        public String queryId;
+
+        @Label("Entity Id")
+        public String entityId;
+
+        @Label("Paragraphs")
+        public int paragraphs;
+
+        /**
+         * Start the event and make the pair the current pair of this thread.
+         */
+        public void start(String queryId, String entityId) {
+            begin();
+            if (isEnabled()) {
+                this.queryId = queryId;
+                this.entityId = entityId;
+                CURRENT_PAIR.set(new String[]{queryId, entityId});
+            }
+        }
+
+        /**
+         * Commit the event and clear the current pair of this thread.
+         */
+        public void finish() {
+            if (isEnabled()) {
+                CURRENT_PAIR.remove();
+                commit();
+            }
+        }
+    }
+
+    @Name("bert_er.RankDocuments")
+    @Label("Rank Documents")
+    @Category({"BERT-ER", "Pipeline"})
+    @Description("Ranking documents with an in-memory index")
+    @StackTrace(false)
+    public static class RankDocuments extends Event {
+        @Label("Query Id")
+        public String queryId;
+
+        @Label("Entity Id")
+        public String entityId;
+
+        @Label("Paragraphs")
+        public int paragraphs;
+
+        @Label("Hits")
+        public int hits;
+
+        @Label("Fallback")
+        @Description("The term store could not rank the documents, so they are ranked again with an in-memory index")
+        public boolean fallback;
+    }
+
+    @Name("bert_er.StoredFields")
+    @Label("Load Stored Fields")
+    @Category({"BERT-ER", "Pipeline"})
+    @Description("Loading paragraphs from the paragraph index by id")
+    @StackTrace(false)
+    public static class StoredFields extends Event {
+        @Label("Query Id")
+        public String queryId;
+
+        @Label("Entity Id")
+        public String entityId;
+
+        @Label("Paragraphs")
+        public int paragraphs;
+
+        @Label("Found")
+        public int found;
+    }
+
+    @Name("bert_er.Output")
+    @Label("Write Output")
+    @Category({"BERT-ER", "Pipeline"})
+    @Description("Writing the output or run file")
+    public static class Output extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Lines")
+        public int lines;
+    }
+
+    /**
+     * Get the pair being processed by this thread.
+     * @return {queryId, entityId}, or nulls if this thread is not inside a recorded pair.
+     */
+    static String[] currentPair() {
+        String[] pair = CURRENT_PAIR.get();
+        return pair == null ? new String[2] : pair;
+    }
+}
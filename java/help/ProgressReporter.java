@@ -0,0 +1,97 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress reporting for parallel runs.
+ * Worker threads only bump lock-free counters; a single reporter thread samples them every
+ * -DprogressInterval seconds (default 10) and prints the tasks, entities and paragraphs done, the throughput and
+ * an ETA. The ETA is weighted by the cost of each task (e.g. the number of entities of a query), so a few large
+ * queries at the end do not make it wildly optimistic.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class ProgressReporter {
+
+    private static final long INTERVAL_SECONDS = Long.getLong("progressInterval", 10);
+
+    private final long totalTasks;
+    private final long totalCost;
+    private final LongAdder tasksDone = new LongAdder();
+    private final LongAdder costDone = new LongAdder();
+    private final LatencyHistogram pairs = Metrics.timer("pair");
+    private final LongAdder paragraphs = Metrics.counter("paragraphs");
+    private final long pairsAtStart;
+    private final long paragraphsAtStart;
+    private final long startTime = System.nanoTime();
+    private final ScheduledExecutorService reporter;
+
+    /**
+     * Start reporting.
+     * @param totalTasks Number of tasks (queries).
+     * @param totalCost Total cost of all tasks.
+     */
+
+    public ProgressReporter(long totalTasks, long totalCost) {
+        this.totalTasks = totalTasks;
+        this.totalCost = Math.max(1, totalCost);
+        this.pairsAtStart = pairs.getCount();
+        this.paragraphsAtStart = paragraphs.sum();
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "progress-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.println(report()), INTERVAL_SECONDS, INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record a finished task. Called from the worker threads.
+     * @param cost Cost of the task.
+     */
+
+    public void taskDone(long cost) {
+        tasksDone.increment();
+        costDone.add(cost);
+    }
+
+    /**
+     * Stop reporting and print the final line.
+     */
+
+    public void close() {
+        reporter.shutdownNow();
+        System.out.println(report());
+    }
+
+    @NotNull
+    private String report() {
+        double secs = Math.max(1e-9, (System.nanoTime() - startTime) / 1e9);
+        long tasks = tasksDone.sum();
+        long cost = costDone.sum();
+        long entities = pairs.getCount() - pairsAtStart;
+        long paras = paragraphs.sum() - paragraphsAtStart;
+
+        String eta = cost == 0
+                ? "--:--:--"
+                : hms((long) (secs * (totalCost - cost) / cost));
+
+        return String.format("Progress: %d/%d queries (%.1f%%), %d entities, %d paragraphs | " +
+                        "%.2f queries/s, %.1f entities/s, %.0f paragraphs/s | elapsed %s, ETA %s",
+                tasks, totalTasks, 100.0 * cost / totalCost, entities, paras,
+                tasks / secs, entities / secs, paras / secs, hms((long) secs), eta);
+    }
+
+    @NotNull
+    private static String hms(long secs) {
+        return String.format("%02d:%02d:%02d", secs / 3600, (secs / 60) % 60, secs % 60);
+    }
+}
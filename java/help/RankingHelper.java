@@ -12,6 +12,7 @@ import org.apache.lucene.search.*;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.LMDirichletSimilarity;
 import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
+import org.apache.lucene.util.BytesRef;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -29,22 +30,45 @@ import java.util.*;
 
 public class RankingHelper  {
 
+    private static final LatencyHistogram PRF_TERMS = Metrics.timer("prf_terms");
+    private static final LatencyHistogram RAM_INDEX = Metrics.timer("ram_index");
+    private static final LatencyHistogram RANKING = Metrics.timer("ranking");
+
     public static class ScoredDocument {
-        private final String docId;
-        private final Document document;
+        private String docId;
+        private Document document;
         private final double score;
+        private final RankedDocuments ranking;
+        private final int rank;
 
         public ScoredDocument(String docId, Document document, double score) {
             this.docId = docId;
             this.document = document;
             this.score = score;
+            this.ranking = null;
+            this.rank = -1;
+        }
+
+        /**
+         * A hit of a RankedDocuments whose document is only loaded when it is first asked for.
+         */
+        private ScoredDocument(@NotNull RankedDocuments ranking, int rank) {
+            this.score = ranking.getScore(rank);
+            this.ranking = ranking;
+            this.rank = rank;
         }
 
         public String getDocId() {
+            if (docId == null && ranking != null) {
+                docId = ranking.getDocId(rank);
+            }
             return docId;
         }
 
         public Document getDocument() {
+            if (document == null && ranking != null) {
+                document = ranking.getDocument(rank);
+            }
             return document;
         }
 
@@ -55,13 +79,100 @@ public class RankingHelper  {
         @Override
         public String toString() {
             return "ScoredDoc{" +
-                    "docId='" + docId + '\'' +
-                    ", document=" + document +
+                    "docId='" + getDocId() + '\'' +
+                    ", document=" + getDocument() +
                     ", score=" + score +
                     '}';
         }
     }
 
+    /**
+     * Result of ranking a list of documents: the top hits as (docID, score) arrays.
+     * Documents are materialized only when asked for. The segments of the in-memory index are never merged (see
+     * LuceneHelper.RAMIndex.createWriter()), so its docIDs follow the order of the input list and a hit is resolved
+     * to the input Document without reading any stored fields; otherwise the document is loaded from the index.
+     */
+
+    public static class RankedDocuments {
+        private final int[] docs;
+        private final float[] scores;
+        private final IndexSearcher searcher;
+        private final List<Document> source;
+        private final Document[] materialized;
+
+        RankedDocuments(int[] docs, float[] scores, IndexSearcher searcher, List<Document> source) {
+            this.docs = docs;
+            this.scores = scores;
+            this.searcher = searcher;
+            this.source = source;
+            this.materialized = new Document[docs.length];
+        }
+
+        @NotNull
+        static RankedDocuments empty() {
+            return new RankedDocuments(new int[0], new float[0], null, Collections.emptyList());
+        }
+
+        public int size() {
+            return docs.length;
+        }
+
+        public boolean isEmpty() {
+            return docs.length == 0;
+        }
+
+        public float getScore(int rank) {
+            return scores[rank];
+        }
+
+        /**
+         * Get the document at a rank.
+         * @param rank Rank, starting at 0.
+         * @return Document, or null if it could not be loaded.
+         */
+        @Nullable
+        public Document getDocument(int rank) {
+            if (materialized[rank] == null) {
+                if (source != null) {
+                    materialized[rank] = source.get(docs[rank]);
+                } else {
+                    try {
+                        materialized[rank] = searcher.doc(docs[rank]);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            return materialized[rank];
+        }
+
+        @Nullable
+        public String getDocId(int rank) {
+            if (materialized[rank] == null && source == null && searcher != null) {
+                // An optimized index has the ids as doc values
+                String docId = LuceneHelper.getId(searcher, docs[rank]);
+                if (docId != null) {
+                    return docId;
+                }
+            }
+            Document doc = getDocument(rank);
+            return doc == null ? null : doc.get("Id");
+        }
+
+        /**
+         * View the hits as a list of ScoredDocuments. The documents are still loaded lazily.
+         * @return List of ScoredDocument in rank order.
+         */
+        @NotNull
+        public List<ScoredDocument> toScoredDocuments() {
+            List<ScoredDocument> list = new ArrayList<>(docs.length);
+            for (int i = 0; i < docs.length; i++) {
+                list.add(new ScoredDocument(this, i));
+            }
+            return list;
+        }
+    }
+
     /**
      * Convert a QueryString to a BooleanQuery with RM3 terms.
      * @param queryStr QueryString
@@ -75,22 +186,67 @@ public class RankingHelper  {
                                         List<ScoredDocument> topKDocs,
                                         List<String> stopWords) {
 
+        try {
+            return toBooleanQuery(tokenizeQuery(queryStr, "Text", new EnglishAnalyzer()), topKDocs, stopWords);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Convert an analyzed query to a BooleanQuery with RM3 terms.
+     * @param queryTokens Query terms, as returned by tokenizeQuery()
+     * @param topKDocs Feedback set of documents
+     * @param stopWords List of stop words
+     * @return BooleanQuery
+     */
+
+    public static BooleanQuery toBooleanQuery(List<String> queryTokens,
+                                              List<ScoredDocument> topKDocs,
+                                              List<String> stopWords) {
+        return toBooleanQuery(queryTokens, topKDocs, stopWords, null);
+    }
+
+    /**
+     * Convert an analyzed query to a BooleanQuery with RM3 terms.
+     * @param queryTokens Query terms, as returned by tokenizeQuery()
+     * @param topKDocs Feedback set of documents
+     * @param stopWords List of stop words
+     * @param termStore Pre-analyzed paragraphs, or null to analyze the text of the feedback documents.
+     * @return BooleanQuery
+     */
+
+    public static BooleanQuery toBooleanQuery(List<String> queryTokens,
+                                              List<ScoredDocument> topKDocs,
+                                              List<String> stopWords,
+                                              @Nullable ParagraphTermStore termStore) {
+
 
         //Get the term distribution
-        Map<String, Double> termDist = getTermDistribution(topKDocs, stopWords);
+        long start = System.nanoTime();
+        Map<String, Double> termDist = getTermDistribution(topKDocs, stopWords, termStore);
 
         // Convert the query to an expanded BooleanQuery
-        BooleanQuery booleanQuery = null;
+        BooleanQuery booleanQuery = toBooleanQuery(queryTokens, termDist);
+        PRF_TERMS.record(System.nanoTime() - start);
+        return booleanQuery;
+
+    }
+
+    /**
+     * Convert an analyzed query to a BooleanQuery with the top 20 terms of a relevance model.
+     * @param queryTokens Query terms, as returned by tokenizeQuery()
+     * @param termDist Term distribution of the feedback set, as returned by getTermDistribution()
+     * @return BooleanQuery
+     */
+
+    @NotNull
+    public static BooleanQuery toBooleanQuery(List<String> queryTokens, @NotNull Map<String, Double> termDist) {
         List<Map.Entry<String, Double>> allWordFreqList = new ArrayList<>(termDist.entrySet());
         List<Map.Entry<String, Double>> expansionTerms = allWordFreqList.subList(0,
                 Math.min(20, allWordFreqList.size()));
-        try {
-            booleanQuery = toRm3Query(queryStr, expansionTerms, false, "Text", new EnglishAnalyzer());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return booleanQuery;
-
+        return toRm3Query(queryTokens, expansionTerms, "Text");
     }
 
     /**
@@ -165,19 +321,25 @@ public class RankingHelper  {
                                     boolean omitQueryTerms,
                                     String searchField,
                                     Analyzer analyzer) throws IOException {
-        List<String> tokens = new ArrayList<>();
+        List<String> tokens = omitQueryTerms
+                ? new ArrayList<>()
+                : tokenizeQuery(queryStr, searchField, analyzer);
+        return toRm3Query(tokens, relevanceModel, searchField);
+    }
+
+    @NotNull
+    public static BooleanQuery toRm3Query(@NotNull List<String> queryTokens,
+                                          List<Map.Entry<String, Double>> relevanceModel,
+                                          String searchField) {
         BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
 
-        if (!omitQueryTerms) {
-            tokens.addAll(tokenizeQuery(queryStr, searchField, analyzer));
-            for (String token : tokens) {
-                booleanQuery.add(new BoostQuery(new TermQuery(new Term(searchField, token)), 1.0f),
-                        BooleanClause.Occur.SHOULD);
-            }
+        for (String token : queryTokens) {
+            booleanQuery.add(new BoostQuery(new TermQuery(new Term(searchField, token)), 1.0f),
+                    BooleanClause.Occur.SHOULD);
         }
 
         // add RM3 terms
-        for (Map.Entry<String, Double> stringFloatEntry : relevanceModel.subList(0, Math.min(relevanceModel.size(), (64 - tokens.size())))) {
+        for (Map.Entry<String, Double> stringFloatEntry : relevanceModel.subList(0, Math.min(relevanceModel.size(), (64 - queryTokens.size())))) {
             String token = stringFloatEntry.getKey();
             double weight = stringFloatEntry.getValue();
             booleanQuery.add(new BoostQuery(new TermQuery(new Term("Text", token)), (float) weight), BooleanClause.Occur.SHOULD);
@@ -187,6 +349,22 @@ public class RankingHelper  {
 
     @NotNull
     public static Map<String, Double> getTermDistribution(@NotNull List<ScoredDocument> topKDocs, List<String> stopWords) {
+        return getTermDistribution(topKDocs, stopWords, null);
+    }
+
+    /**
+     * Get the term distribution of a feedback set.
+     * The terms of a document in the term store are read from it; the text of the other documents is analyzed.
+     * @param topKDocs Feedback set of documents
+     * @param stopWords List of stop words
+     * @param termStore Pre-analyzed paragraphs, or null.
+     * @return Terms with their weights, highest first.
+     */
+
+    @NotNull
+    public static Map<String, Double> getTermDistribution(@NotNull List<ScoredDocument> topKDocs,
+                                                          List<String> stopWords,
+                                                          @Nullable ParagraphTermStore termStore) {
         Map<String, Double> freqDist = new HashMap<>();
 
         // compute score normalizer
@@ -197,6 +375,9 @@ public class RankingHelper  {
 
         for (ScoredDocument scoredDocument : topKDocs) {
             double weight = scoredDocument.getScore() / normalizer;
+            if (termStore != null && termStore.addFeedbackTerms(scoredDocument.getDocId(), weight, freqDist)) {
+                continue;
+            }
             String processedDocText = getProcessedDocText(scoredDocument.getDocument(), stopWords);
             try {
                 addTokens(processedDocText, weight, freqDist);
@@ -285,41 +466,186 @@ public class RankingHelper  {
     public static List<ScoredDocument>  rankDocuments(Query query,
                                                       List<Document> documentList,
                                                       int numDocs) {
+        return rank(query, documentList, numDocs).toScoredDocuments();
+    }
 
+    /**
+     * Ranks a list of Lucene Documents for the given query and returns only the top hits.
+     * No stored fields are read here; ask for no more hits than the caller will use.
+     * @param query Lucene Query
+     * @param documentList Documents to rank
+     * @param numDocs Number of hits needed
+     * @return Top hits, with documents materialized on demand.
+     */
+
+    @NotNull
+    public static RankedDocuments rank(Query query,
+                                       List<Document> documentList,
+                                       int numDocs) {
 
-        List<ScoredDocument> rankedDocList = new ArrayList<>();
+        RankedDocuments ranked = RankedDocuments.empty();
+        PipelineEvents.RankDocuments event = new PipelineEvents.RankDocuments();
+        event.begin();
         try {
+            long start = System.nanoTime();
+
+            // The in-memory index skips null documents
+            List<Document> indexed = new ArrayList<>(documentList.size());
+            for (Document d : documentList) {
+                if (d != null) {
+                    indexed.add(d);
+                }
+            }
 
             // 1. Create the IndexWriter
             IndexWriter iw = LuceneHelper.RAMIndex.createWriter(new EnglishAnalyzer());
 
             // 2. Create the index
-            LuceneHelper.RAMIndex.createIndex(documentList, iw);
+            LuceneHelper.RAMIndex.createIndex(indexed, iw);
 
             // 3. Create the IndexSearcher
             IndexSearcher is = LuceneHelper.RAMIndex.createSearcher(new LMJelinekMercerSimilarity(0.4f), iw);
+            long indexedTime = System.nanoTime();
+            RAM_INDEX.record(indexedTime - start);
 
             // 4. Search the index
-            TopDocs topDocs = is.search(query, numDocs);
-
-            if (topDocs.totalHits.value == 0) {
-                // If no documents found, then return empty list
-                return new ArrayList<>();
-            }
+            TopDocs topDocs = is.search(query, Math.max(1, numDocs));
 
-            // 5. Score the docs
+            // 5. Keep the (docID, score) pairs only
             ScoreDoc[] retDocs = topDocs.scoreDocs;
-
+            int[] docs = new int[retDocs.length];
+            float[] scores = new float[retDocs.length];
             for (int i = 0; i < retDocs.length; i++) {
-                rankedDocList.add(new ScoredDocument(is.doc(retDocs[i].doc).get("Id"), is.doc(retDocs[i].doc), topDocs.scoreDocs[i].score));
+                docs[i] = retDocs[i].doc;
+                scores[i] = retDocs[i].score;
             }
+            boolean inputOrder = is.getIndexReader().maxDoc() == indexed.size();
+            ranked = new RankedDocuments(docs, scores, is, inputOrder ? indexed : null);
+            RANKING.record(System.nanoTime() - indexedTime);
             // 6. Close the index
             //LuceneHelper.RAMIndex.close(iw);
 
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return rankedDocList;
+        commit(event, documentList.size(), ranked.size());
+        return ranked;
+    }
+
+    /**
+     * Ranks a set of paragraphs of an index for the given query, expanded with RM3 terms using Pseudo-Relevance
+     * Feedback. The paragraphs are searched in place: the statistics of the whole index are used and nothing is
+     * re-indexed.
+     * @param queryStr QueryString
+     * @param entityStr Name of the entity
+     * @param paraIds Ids of the paragraphs to rank
+     * @param searcher IndexSearcher of the index with the paragraphs
+     * @param stopWords List of stop words
+     * @param numDocs Number of hits needed
+     * @return Top hits, or null if no paragraph matches the query.
+     */
+
+    @Nullable
+    public static RankedDocuments rankWithPRF(String queryStr,
+                                              String entityStr,
+                                              @NotNull Collection<String> paraIds,
+                                              IndexSearcher searcher,
+                                              List<String> stopWords,
+                                              int numDocs) {
+        return rankWithPRF(queryStr, entityStr, paraIds, searcher, stopWords, numDocs, null);
+    }
+
+    /**
+     * Ranks a set of paragraphs of an index for the given query, expanded with RM3 terms using Pseudo-Relevance
+     * Feedback, reading the terms of the feedback paragraphs from a term store.
+     * @param queryStr QueryString
+     * @param entityStr Name of the entity
+     * @param paraIds Ids of the paragraphs to rank
+     * @param searcher IndexSearcher of the index with the paragraphs
+     * @param stopWords List of stop words
+     * @param numDocs Number of hits needed
+     * @param termStore Pre-analyzed paragraphs, or null.
+     * @return Top hits, or null if no paragraph matches the query.
+     */
+
+    @Nullable
+    public static RankedDocuments rankWithPRF(String queryStr,
+                                              String entityStr,
+                                              @NotNull Collection<String> paraIds,
+                                              IndexSearcher searcher,
+                                              List<String> stopWords,
+                                              int numDocs,
+                                              @Nullable ParagraphTermStore termStore) {
+        // 1. Rank with the query and entity terms only
+        RankedDocuments feedback = rank(toBooleanQuery(queryStr, entityStr), paraIds, searcher, 100);
+        if (feedback.isEmpty()) {
+            return null;
+        }
+
+        // 2. Expand the query with RM3 terms and rank again
+        BooleanQuery booleanQuery;
+        try {
+            booleanQuery = toBooleanQuery(tokenizeQuery(queryStr, "Text", new EnglishAnalyzer()),
+                    feedback.toScoredDocuments(), stopWords, termStore);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return rank(booleanQuery, paraIds, searcher, numDocs);
+    }
+
+    /**
+     * Ranks a set of paragraphs of an index for the given query, using the statistics of the whole index.
+     * @param query Lucene Query
+     * @param paraIds Ids of the paragraphs to rank
+     * @param searcher IndexSearcher of the index with the paragraphs
+     * @param numDocs Number of hits needed
+     * @return Top hits, with documents loaded from the index on demand.
+     */
+
+    @NotNull
+    public static RankedDocuments rank(Query query,
+                                       @NotNull Collection<String> paraIds,
+                                       @NotNull IndexSearcher searcher,
+                                       int numDocs) {
+        RankedDocuments ranked = RankedDocuments.empty();
+        PipelineEvents.RankDocuments event = new PipelineEvents.RankDocuments();
+        event.begin();
+        try {
+            long start = System.nanoTime();
+            List<BytesRef> ids = new ArrayList<>(paraIds.size());
+            for (String paraId : paraIds) {
+                ids.add(new BytesRef(paraId));
+            }
+            BooleanQuery filtered = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(new TermInSetQuery("Id", ids), BooleanClause.Occur.FILTER)
+                    .build();
+            ScoreDoc[] retDocs = searcher.search(filtered, Math.max(1, numDocs)).scoreDocs;
+            int[] docs = new int[retDocs.length];
+            float[] scores = new float[retDocs.length];
+            for (int i = 0; i < retDocs.length; i++) {
+                docs[i] = retDocs[i].doc;
+                scores[i] = retDocs[i].score;
+            }
+            ranked = new RankedDocuments(docs, scores, searcher, null);
+            RANKING.record(System.nanoTime() - start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        commit(event, paraIds.size(), ranked.size());
+        return ranked;
+    }
+
+    static void commit(@NotNull PipelineEvents.RankDocuments event, int paragraphs, int hits) {
+        if (event.shouldCommit()) {
+            String[] pair = PipelineEvents.currentPair();
+            event.queryId = pair[0];
+            event.entityId = pair[1];
+            event.paragraphs = paragraphs;
+            event.hits = hits;
+            event.commit();
+        }
     }
 
     @NotNull
@@ -0,0 +1,183 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes a passage run as it is made, one (query, entity) ranking at a time, instead of keeping its lines in memory.
+ * The rankings of different threads are written whole, one after the other.
+ * Two formats (-DrunFormat=trec|binary, default trec):
+ * trec: "query_id entity_id/para_id Q0 rank score tag" lines, appended to the file.
+ * binary: [magic][version][tag] header, then for every ranking: [query_id][entity_id][n] and n x [para_id][score],
+ * with Strings written by DataOutput.writeUTF(). The query and entity ids and the tag are not repeated per line.
+ * Convert it to TREC text with: java -cp <JarFile>.jar help.RunWriter <binaryRun> <trecRun>
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class RunWriter implements Closeable {
+
+    public enum Format {TREC, BINARY}
+
+    private static final long MAGIC = 0x4245525452554e31L; // "BERTRUN1"
+    private static final int VERSION = 1;
+    private static final LatencyHistogram OUTPUT = Metrics.timer("output");
+
+    private final String file;
+    private final Format format;
+    private final String tag;
+    private final Writer text;
+    private final DataOutputStream binary;
+    private final StringBuilder line = new StringBuilder();
+    private int lines = 0;
+
+    /**
+     * Open a run file.
+     * @param file Run file. A TREC run is appended to, a binary run is overwritten.
+     * @param format Format
+     * @param tag Run tag
+     * @throws IOException If the file cannot be opened.
+     */
+
+    public RunWriter(String file, @NotNull Format format, String tag) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.tag = tag;
+        if (format == Format.TREC) {
+            this.text = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                    StandardCharsets.UTF_8), 1 << 16);
+            this.binary = null;
+        } else {
+            this.text = null;
+            this.binary = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            binary.writeLong(MAGIC);
+            binary.writeInt(VERSION);
+            binary.writeUTF(tag);
+        }
+    }
+
+    /**
+     * Open a run file in the format given with -DrunFormat.
+     * @param file Run file
+     * @param tag Run tag
+     * @return RunWriter
+     * @throws IOException If the file cannot be opened.
+     */
+
+    @NotNull
+    public static RunWriter open(String file, String tag) throws IOException {
+        Format format = Format.valueOf(System.getProperty("runFormat", "trec").toUpperCase());
+        return new RunWriter(file, format, tag);
+    }
+
+    /**
+     * Write the ranking of the passages of an entity.
+     * @param queryId Query
+     * @param entityId Entity
+     * @param paraIds Passages, best first.
+     * @param scores Scores of the passages.
+     */
+
+    public synchronized void write(String queryId, String entityId, @NotNull List<String> paraIds,
+                                   @NotNull double[] scores) {
+        long start = System.nanoTime();
+        try {
+            if (format == Format.TREC) {
+                for (int i = 0; i < paraIds.size(); i++) {
+                    line.setLength(0);
+                    line.append(queryId).append(' ').append(entityId).append('/').append(paraIds.get(i))
+                            .append(" Q0 ").append(i + 1).append(' ').append(scores[i]).append(' ').append(tag)
+                            .append(System.lineSeparator());
+                    text.append(line);
+                }
+            } else {
+                binary.writeUTF(queryId);
+                binary.writeUTF(entityId);
+                binary.writeInt(paraIds.size());
+                for (int i = 0; i < paraIds.size(); i++) {
+                    binary.writeUTF(paraIds.get(i));
+                    binary.writeDouble(scores[i]);
+                }
+            }
+            lines += paraIds.size();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        OUTPUT.record(System.nanoTime() - start);
+    }
+
+    public synchronized int getLines() {
+        return lines;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (text != null) {
+            text.close();
+        } else {
+            binary.close();
+        }
+        PipelineEvents.Output event = new PipelineEvents.Output();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.lines = lines;
+            event.commit();
+        }
+    }
+
+    /**
+     * Convert a binary run to a TREC run.
+     * @param binaryRun Binary run file.
+     * @param trecRun TREC run file to write.
+     * @return Number of lines written.
+     * @throws IOException If the binary run cannot be read or the TREC run cannot be written.
+     */
+
+    public static int toTrec(String binaryRun, String trecRun) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryRun), 1 << 16));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(trecRun),
+                     StandardCharsets.UTF_8), 1 << 16)) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a binary run: " + binaryRun);
+            }
+            String tag = in.readUTF();
+            StringBuilder line = new StringBuilder();
+            int lines = 0;
+            while (true) {
+                String queryId;
+                try {
+                    queryId = in.readUTF();
+                } catch (EOFException e) {
+                    return lines;
+                }
+                String entityId = in.readUTF();
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    String paraId = in.readUTF();
+                    double score = in.readDouble();
+                    line.setLength(0);
+                    line.append(queryId).append(' ').append(entityId).append('/').append(paraId)
+                            .append(" Q0 ").append(i + 1).append(' ').append(score).append(' ').append(tag);
+                    out.append(line);
+                    out.newLine();
+                    lines++;
+                }
+            }
+        }
+    }
+
+    public static void main(@NotNull String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: RunWriter <binaryRun> <trecRun>");
+            return;
+        }
+        System.out.print("Converting run file...");
+        int lines = toTrec(args[0], args[1]);
+        System.out.println("[Done].");
+        System.out.println(lines + " lines written at: " + args[1]);
+    }
+}
@@ -0,0 +1,72 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the independent inputs of a job (indexes, run files, TSV files, stop words) concurrently.
+ * Each resource is loaded by its own thread and its load time is logged when it completes.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public class StartupLoader {
+
+    private final ExecutorService executor;
+    private final long startTime = System.nanoTime();
+
+    public StartupLoader() {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "startup-loader-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start loading a resource.
+     * @param name Name of the resource, used in the log.
+     * @param loader Loads the resource.
+     * @return Future for the loaded resource.
+     */
+
+    @NotNull
+    public <T> Future<T> submit(@NotNull String name, @NotNull Callable<T> loader) {
+        return executor.submit(() -> {
+            long start = System.nanoTime();
+            T resource = loader.call();
+            System.out.println("Loaded " + name + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+            return resource;
+        });
+    }
+
+    /**
+     * Wait for a resource to be loaded.
+     * @param future Future returned by {@link #submit(String, Callable)}.
+     * @return The loaded resource.
+     */
+
+    public <T> T get(@NotNull Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading job inputs", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to load job inputs", e.getCause());
+        }
+    }
+
+    /**
+     * Stop the loader threads and log the total startup time.
+     */
+
+    public void shutdown() {
+        executor.shutdown();
+        System.out.println("Startup finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms.");
+    }
+}
@@ -0,0 +1,88 @@
+package help;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A read-only String to String lookup table.
+ * This is the subset of Map used by the entity data classes for the query, entity and entity to passage files, so
+ * that these tables can be kept either in a HashMap or off-heap.
+ *
+ * @author Shubham Chatterjee
+ * @version 10/19/2026
+ */
+
+public interface StringTable {
+
+    /**
+     * Get the value for a key.
+     * @param key Key
+     * @return Value, or null if the key is not in the table.
+     */
+    @Nullable
+    String get(String key);
+
+    /**
+     * Whether the table contains a key.
+     * @param key Key
+     * @return true if the key is in the table.
+     */
+    boolean containsKey(String key);
+
+    /**
+     * Number of entries in the table.
+     * @return Size of the table.
+     */
+    int size();
+
+    /**
+     * Visit every (key, value) entry of the table.
+     * @param action Action to perform on each entry.
+     */
+    void forEach(@NotNull BiConsumer<String, String> action);
+
+    /**
+     * Wrap a Map as a StringTable.
+     * @param map Map
+     * @return StringTable backed by the map.
+     */
+    @NotNull
+    static StringTable onHeap(@NotNull Map<String, String> map) {
+        return new OnHeap(map);
+    }
+
+    /**
+     * StringTable backed by a Map.
+     */
+    class OnHeap implements StringTable {
+        private final Map<String, String> map;
+
+        public OnHeap(Map<String, String> map) {
+            this.map = map;
+        }
+
+        @Nullable
+        @Override
+        public String get(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void forEach(@NotNull BiConsumer<String, String> action) {
+            map.forEach(action);
+        }
+    }
+}
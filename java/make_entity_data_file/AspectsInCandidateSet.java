@@ -1,9 +1,14 @@
 package make_entity_data_file;
 
+import help.AspectCatalog;
+import help.AspectTermStore;
 import help.LuceneHelper;
 import help.RankingHelper;
+import help.StringTable;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
 import org.apache.lucene.search.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -12,6 +17,9 @@ import org.json.JSONObject;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.nio.file.Paths;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 
@@ -29,43 +37,122 @@ import java.util.stream.Collectors;
 public class AspectsInCandidateSet extends MakeEntityData {
 
     public static class ParaAspect {
-        private final Document aspectDoc; // Lucene document corresponding to the aspect
+        private final String aspectId; // Id of the aspect
+        private final String aspectText; // Text of the aspect, with line breaks replaced by spaces
         private final String paraId; // Id of the paragraph containing the aspect
 
-        public ParaAspect(Document aspectDoc, String paraId) {
-            this.aspectDoc = aspectDoc;
+        public ParaAspect(String aspectId, String aspectText, String paraId) {
+            this.aspectId = aspectId;
+            this.aspectText = aspectText;
             this.paraId = paraId;
         }
 
-        public Document getAspectDoc() {
-            return aspectDoc;
-        }
-
         public String getParaId() {
             return paraId;
         }
 
         public String getAspectId() {
-            return aspectDoc.get("Id");
+            return aspectId;
         }
 
         public String getAspectText() {
-            return aspectDoc
-                    .get("Text")
-                    .replaceAll("\n", " ")
-                    .replaceAll("\r", " ");
+            return aspectText;
+        }
+    }
+
+    /**
+     * An aspect linked in a passage, before its text is loaded from the catalog.
+     */
+
+    private static class AspectLink {
+        private final String entityId;
+        private final String aspectId;
+        private final String paraId;
+        private final int position;
+
+        AspectLink(String entityId, String aspectId, String paraId, int position) {
+            this.entityId = entityId;
+            this.aspectId = aspectId;
+            this.paraId = paraId;
+            this.position = position;
         }
     }
 
 
-    private final IndexSearcher catalogSearcher;
-    private final Map<String, Map<String, String>> posEntityToTextMap = new HashMap<>();
-    private final Map<String, Map<String, String>> negEntityToTextMap = new HashMap<>();
-    private final Map<String, Map<String, String>> allEntityToTextMap = new HashMap<>();
-    private final Map<String, String> queryIdToNameMap;
+    /**
+     * Everything about one query that is shared by its entities: the top-K passages, the aspects linked to the
+     * entities in them, the entity scores, and the query expanded with RM3 terms from the top-K passages. The expanded query only
+     * depends on the query, so it is built once (if any entity has more than one aspect) instead of once per entity.
+     * A context is built and used by one thread, and is not changed after it is built.
+     */
+
+    private class QueryContext {
+        private final String queryStr;
+        private final List<RankingHelper.ScoredDocument> topKDocs;
+        private final Map<String, List<AspectLink>> entityAspects;
+        private final Map<String, Double> entityRanking;
+        private final BooleanQuery expandedQuery;
+
+        QueryContext(String queryId) {
+            this.queryStr = queryIdToNameMap.get(queryId);
+
+            // Get the top-K passages corresponding to the query from the passage run file
+            this.topKDocs = Collections.unmodifiableList(getTopKDocsForQuery(paraRankings.get(queryId)));
+
+            // Get the map of all (entity, aspects) and a ranking of entities from the passages above
+            Map<String, List<AspectLink>> aspects = new HashMap<>();
+            this.entityRanking = Collections.unmodifiableMap(aggregateEntities(topKDocs, aspects));
+            this.entityAspects = Collections.unmodifiableMap(aspects);
+
+            // Use the top-K passages to derive expansion terms for the query and convert it to a BooleanQuery
+            boolean multiAspect = entityAspects.values().stream().anyMatch(aspectSet -> aspectSet.size() > 1);
+            this.expandedQuery = multiAspect
+                    ? RankingHelper.toBooleanQuery(queryStr, topKDocs, stopWords)
+                    : null;
+        }
+
+        /**
+         * Load the aspects of some entities from the catalog, in one batch.
+         * The entities are put in the map in the order of their first link to an aspect of the catalog in the
+         * passages, so the map iterates over them in the same order as the map of all the query entities did.
+         * @param entityIds Entities
+         * @return Map of {Entity: Aspects found in the catalog}, without the entities which have none.
+         */
+
+        @NotNull
+        Map<String, Set<ParaAspect>> resolve(@NotNull Collection<String> entityIds) {
+            List<AspectLink> links = new ArrayList<>();
+            List<String> aspectIds = new ArrayList<>();
+            for (String entityId : entityIds) {
+                for (AspectLink link : entityAspects.getOrDefault(entityId, Collections.emptyList())) {
+                    links.add(link);
+                    aspectIds.add(link.aspectId);
+                }
+            }
+            Map<String, String> texts = catalog.getTexts(aspectIds);
+
+            links.sort(Comparator.comparingInt(link -> link.position));
+            Map<String, Set<ParaAspect>> resolved = new HashMap<>();
+            for (AspectLink link : links) {
+                String text = texts.get(link.aspectId);
+                if (text != null) {
+                    resolved.computeIfAbsent(link.entityId, k -> new HashSet<>())
+                            .add(new ParaAspect(link.aspectId, text, link.paraId));
+                }
+            }
+            return resolved;
+        }
+    }
+
+
+    private final AspectCatalog catalog;
+    private final AspectTermStore aspectTerms;
+    private final Map<String, Map<String, String>> posEntityToTextMap = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> negEntityToTextMap = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> allEntityToTextMap = new ConcurrentHashMap<>();
+    private final StringTable queryIdToNameMap;
     private final Map<String, LinkedHashMap<String, Double>> paraRankings;
     private final List<String> stopWords;
-    private List<RankingHelper.ScoredDocument> topKDocs;
     private final int takeKDocs;
 
 
@@ -86,22 +173,17 @@ public class AspectsInCandidateSet extends MakeEntityData {
 
         this.takeKDocs = takeKDocs;
 
+        Future<IndexSearcher> catalogFuture = startup.submit("catalog index", () -> LuceneHelper.createSearcher(catalogIndex, "bm25"));
+        Future<Map<String, LinkedHashMap<String, Double>>> paraRankingsFuture = startup.submit("passage run file", () -> readRunFile(psgRanking));
+        Future<StringTable> queriesFuture = startup.submit("queries file", () -> readStringTable(queriesFile, null));
+        Future<List<String>> stopWordsFuture = startup.submit("stop words", () -> getStopWords(stopWordsFile));
 
-        System.out.print("Setting up catalog index...");
-        this.catalogSearcher = LuceneHelper.createSearcher(catalogIndex, "bm25");
-        System.out.println("[Done].");
-
-        System.out.print("Loading passage run file...");
-        paraRankings = readRunFile(psgRanking);
-        System.out.println("[Done].");
-
-        System.out.print("Loading queries file....");
-        queryIdToNameMap = readTsvFile(queriesFile);
-        System.out.println("[Done].");
-
-        System.out.print("Loading stop words....");
-        stopWords = getStopWords(stopWordsFile);
-        System.out.println("[Done].");
+        this.catalog = new AspectCatalog(startup.get(catalogFuture));
+        this.aspectTerms = openAspectTerms();
+        paraRankings = startup.get(paraRankingsFuture);
+        queryIdToNameMap = startup.get(queriesFuture);
+        stopWords = startup.get(stopWordsFuture);
+        finishStartup();
 
         doTask(paraRankings.keySet(), mode);
 
@@ -130,22 +212,17 @@ public class AspectsInCandidateSet extends MakeEntityData {
 
         this.takeKDocs = takeKDocs;
 
+        Future<IndexSearcher> catalogFuture = startup.submit("catalog index", () -> LuceneHelper.createSearcher(catalogIndex, "bm25"));
+        Future<Map<String, LinkedHashMap<String, Double>>> paraRankingsFuture = startup.submit("passage run file", () -> readRunFile(psgRanking));
+        Future<StringTable> queriesFuture = startup.submit("queries file", () -> readStringTable(queriesFile, null));
+        Future<List<String>> stopWordsFuture = startup.submit("stop words", () -> getStopWords(stopWordsFile));
 
-        System.out.print("Setting up catalog index...");
-        this.catalogSearcher = LuceneHelper.createSearcher(catalogIndex, "bm25");
-        System.out.println("[Done].");
-
-        System.out.print("Loading passage run file...");
-        paraRankings = readRunFile(psgRanking);
-        System.out.println("[Done].");
-
-        System.out.print("Loading queries file....");
-        queryIdToNameMap = readTsvFile(queriesFile);
-        System.out.println("[Done].");
-
-        System.out.print("Loading stop words....");
-        stopWords = getStopWords(stopWordsFile);
-        System.out.println("[Done].");
+        this.catalog = new AspectCatalog(startup.get(catalogFuture));
+        this.aspectTerms = openAspectTerms();
+        paraRankings = startup.get(paraRankingsFuture);
+        queryIdToNameMap = startup.get(queriesFuture);
+        stopWords = startup.get(stopWordsFuture);
+        finishStartup();
 
         doTask(paraRankings.keySet(), mode);
 
@@ -165,20 +242,7 @@ public class AspectsInCandidateSet extends MakeEntityData {
     @Override
     public void getEntityData(String queryId, @NotNull String mode) {
 
-        String queryStr = queryIdToNameMap.get(queryId);
-
-        // Get the top-K passages corresponding to the query from the passage run file
-        topKDocs = getTopKDocsForQuery(paraRankings.get(queryId));
-
-
-        // Get the map of all (entity, aspects) from the passages above
-        Map<String, Set<ParaAspect>> allQueryEntities = getEntitiesFromPassages(topKDocs);
-
-        // Get a ranking of entities from the topK passages for the query
-        Map<String, Double> entityRankingForQuery = getEntityRankingFromCandidateSet(topKDocs)
-                .entrySet()
-                .stream()
-                .collect(LinkedHashMap::new, (m, e) -> m.put(e.getKey(), e.getValue()), Map::putAll);
+        QueryContext context = new QueryContext(queryId);
 
 
         if (mode.equals("train")) {
@@ -190,48 +254,37 @@ public class AspectsInCandidateSet extends MakeEntityData {
                 Set<String> relevantEntitySet = entities.get(queryId);
 
 
+                // The query entities with an aspect in the catalog
+                Map<String, Set<ParaAspect>> queryEntities = context.resolve(context.entityAspects.keySet());
+
                 // Get the negative query entities
-                Set<String> negQueryEntitySet = new LinkedHashSet<>(allQueryEntities.keySet());
-                try {
-                    negQueryEntitySet.removeAll(relevantEntitySet);
-                } catch (NullPointerException e) {
-                    System.out.println("NullPointerException");
-                    e.printStackTrace();
-                }
+                Set<String> negQueryEntitySet = new LinkedHashSet<>(queryEntities.keySet());
+                negQueryEntitySet.removeAll(relevantEntitySet);
 
                 // Get the positive query entities
-                Set<String> posQueryEntitySet = new LinkedHashSet<>(allQueryEntities.keySet());
-                try {
-                    posQueryEntitySet.retainAll(relevantEntitySet);
-                } catch (NullPointerException e) {
-                    System.out.println("NullPointerException");
-                    e.printStackTrace();
-                }
+                Set<String> posQueryEntitySet = new LinkedHashSet<>(queryEntities.keySet());
+                posQueryEntitySet.retainAll(relevantEntitySet);
 
                 // Balance the number of positive and negative entities
-
                 negQueryEntitySet = negQueryEntitySet
                         .stream()
                         .limit(posQueryEntitySet.size())
                         .collect(Collectors.toCollection(LinkedHashSet::new));
 
                 // Get the positive entities text
-                Map<String, String> posEntityToText = getEntityText(queryStr, posQueryEntitySet, allQueryEntities, entityRankingForQuery);
+                Map<String, String> posEntityToText = getEntityText(context, posQueryEntitySet, queryEntities);
                 posEntityToTextMap.put(queryId, posEntityToText);
 
                 // Get the negative entities text
-                Map<String, String> negEntityToText = getEntityText(queryStr, negQueryEntitySet, allQueryEntities, entityRankingForQuery);
+                Map<String, String> negEntityToText = getEntityText(context, negQueryEntitySet, queryEntities);
                 negEntityToTextMap.put(queryId, negEntityToText);
             }
         } else {
 
-            Map<String, String> allEntityToText = getEntityText(queryStr, entityRankingForQuery.keySet(), allQueryEntities, entityRankingForQuery);
+            Set<String> entitySet = context.entityRanking.keySet();
+            Map<String, String> allEntityToText = getEntityText(context, entitySet, context.resolve(entitySet));
             allEntityToTextMap.put(queryId, allEntityToText);
         }
-        if (parallel) {
-            count.getAndIncrement();
-            System.out.println("Done: " + queryId + " ( " + count + "/" + total + " ).");
-        }
     }
 
     /**
@@ -246,16 +299,14 @@ public class AspectsInCandidateSet extends MakeEntityData {
         List<Map.Entry<String, Double>> subList = allPsgRankings.subList(0, Math.min(takeKDocs, allPsgRankings.size()));
         List<RankingHelper.ScoredDocument> topKDocs = new ArrayList<>();
 
+        List<String> paraIds = new ArrayList<>(subList.size());
         for (Map.Entry<String, Double> entry : subList) {
-            try {
-                String paraId = entry.getKey();
-                double paraScore = entry.getValue();
-                Document doc = LuceneHelper.searchIndex("Id", paraId, indexSearcher);
-                if (doc != null) {
-                    topKDocs.add(new RankingHelper.ScoredDocument(paraId, doc, paraScore));
-                }
-            } catch (IOException | ParseException e) {
-                e.printStackTrace();
+            paraIds.add(entry.getKey());
+        }
+        Document[] docs = LuceneHelper.getDocuments(paraIds, indexSearcher);
+        for (int i = 0; i < docs.length; i++) {
+            if (docs[i] != null) {
+                topKDocs.add(new RankingHelper.ScoredDocument(paraIds.get(i), docs[i], subList.get(i).getValue()));
             }
         }
 
@@ -264,152 +315,85 @@ public class AspectsInCandidateSet extends MakeEntityData {
     }
 
     /**
-     * Derive an entity ranking from a passage ranking.
-     * Score of entity = sum of scores of passages it appears in
+     * Collect the entities of the top-K passages in one scan of their entity annotations.
+     * Score of entity = sum of scores of passages it appears in. Every passage is counted once per entity, however
+     * many times the entity is linked in it. The aspects linked in the passages are collected per entity.
      * @param topKDocs List of top-K passages for the query.
-     * @return Entity ranking derived from top-K passages.
-     */
-
-    @NotNull
-    private Map<String, Double> getEntityRankingFromCandidateSet(List<RankingHelper.ScoredDocument> topKDocs) {
-
-
-        // 1. Get the map from Entity --> Passage set
-        // Passage set = set of passages which contains a link to the entity
-        Map<String, Set<String>> entityToPassageMap = getEntityToPassageMap(topKDocs);
-
-        // 2. Rank the entities using the scores of the passages.
-        // Score of entity = sum of scores of passages it appears in
-
-
-        return rankEntities(entityToPassageMap, topKDocs);
-    }
-
-    /**
-     * Rank entities.
-     * @param entityToPassageMap Map from entity to set of passages that the entity appears in.
-     * @param topKDocs Top-K passages for the query.
+     * @param entityAspects Filled with the map of {Entity: Aspects linked to the entity in the passages}.
      * @return Ranking of entities derived from the top-K passages.
      */
 
     @NotNull
-    private Map<String, Double> rankEntities(@NotNull Map<String, Set<String>> entityToPassageMap,
-                                             List<RankingHelper.ScoredDocument> topKDocs) {
-
-        Map<String, Double> entityRanking = new HashMap<>();
-
-        for (String entityId : entityToPassageMap.keySet()) {
-            Set<String> passageSetForEntity = entityToPassageMap.get(entityId);
-            double entityScore = getEntityScore(passageSetForEntity, topKDocs);
-            entityRanking.put(entityId, entityScore);
-        }
-
-        return sortByValueDescending(entityRanking);
-    }
-
-    /**
-     * Get the score of an entity.
-     * @param passageSetForEntity Set of passages in which the entity appears.
-     * @param topKDocs Top-K passages for the query.
-     * @return Score of the entity.
-     */
-
-    private double getEntityScore(@NotNull Set<String> passageSetForEntity,
-                                  @NotNull List<RankingHelper.ScoredDocument> topKDocs) {
-        double score = 0.0d;
-
-        // We convert the List<Map.Entry<String, Double>> to a Map<String, Double> for easier lookup
-        Map<String, Double> rankedDocMap = new LinkedHashMap<>();
-        for (RankingHelper.ScoredDocument scoredDocument : topKDocs) {
-            rankedDocMap.put(scoredDocument.getDocId(), scoredDocument.getScore());
-        }
-
-        for (String paraId : passageSetForEntity) {
-            if (rankedDocMap.containsKey(paraId)) {
-                score += rankedDocMap.get(paraId);
-            }
-        }
-
-        return score;
-    }
-
-    /**
-     * Make a map of entity to set of passages in which the entity occurs.
-     * @param topKDocs Top-K passages for the query.
-     * @return Map of of {Entity: Set of passages in which entity occurs}
-     */
-
-    @NotNull
-    private Map<String, Set<String>> getEntityToPassageMap(@NotNull List<RankingHelper.ScoredDocument> topKDocs) {
-        Map<String, Set<String>> entityToPassageMap = new HashMap<>();
-
-        for (RankingHelper.ScoredDocument document : topKDocs) {
-            // Get the entities in the paragraph
-            Set<String> entitySetForPara = getParaEntities(document.getDocument());
-
-            // Populate the entityToPassageMap
-            makeEntityToPassageMap(document.getDocId(), entitySetForPara, entityToPassageMap);
-        }
-        return entityToPassageMap;
-    }
-
-    /**
-     * Helper method.
-     */
-
-    private void makeEntityToPassageMap(String paraId,
-                                        @NotNull Set<String> entitySetForPara,
-                                        Map<String, Set<String>> entityToPassageMap) {
-        for (String entityId : entitySetForPara) {
-            Set<String> paraSetForEntity = entityToPassageMap.containsKey(entityId)
-                    ? entityToPassageMap.get(entityId)
-                    : new HashSet<>();
-            paraSetForEntity.add(paraId);
-            entityToPassageMap.put(entityId, paraSetForEntity);
-        }
-    }
-
-    /**
-     * Get the entities in the paragraph.
-     * @param document Lucene Document
-     * @return Set of entities in the paragraph
-     */
-
-    @NotNull
-    private Set<String> getParaEntities(@NotNull Document document) {
-        Set<String> entitySet = new HashSet<>();
-        String[] annotations = document.get("Entities").split("\n");
-        for (String annotation : annotations) {
-            if (!annotation.isEmpty()) {
+    private LinkedHashMap<String, Double> aggregateEntities(@NotNull List<RankingHelper.ScoredDocument> topKDocs,
+                                                            @NotNull Map<String, List<AspectLink>> entityAspects) {
+        Map<String, Integer> entityIndex = new HashMap<>();
+        double[] scores = new double[64];
+        int[] lastPassage = new int[64];
+        int links = 0;
+
+        for (int p = 0; p < topKDocs.size(); p++) {
+            RankingHelper.ScoredDocument document = topKDocs.get(p);
+            String paraId = document.getDocId();
+            String[] annotations = document.getDocument().get("Entities").split("\n");
+            for (String annotation : annotations) {
+                if (annotation.isEmpty()) {
+                    continue;
+                }
                 try {
                     JSONObject jsonObject = new JSONObject(annotation);
                     String entityId = jsonObject.getString("linkPageId");
-                    entitySet.add(entityId);
+
+                    // Score the entity with the passage, once per passage
+                    Integer e = entityIndex.get(entityId);
+                    if (e == null) {
+                        e = entityIndex.size();
+                        entityIndex.put(entityId, e);
+                        if (e == scores.length) {
+                            scores = Arrays.copyOf(scores, 2 * e);
+                            lastPassage = Arrays.copyOf(lastPassage, 2 * e);
+                        }
+                        lastPassage[e] = -1;
+                    }
+                    if (lastPassage[e] != p) {
+                        lastPassage[e] = p;
+                        scores[e] += document.getScore();
+                    }
+
+                    // Collect the aspect; its text is only loaded if the entity is used
+                    String aspectId = jsonObject.getString("aspect");
+                    entityAspects.computeIfAbsent(entityId, k -> new ArrayList<>())
+                            .add(new AspectLink(entityId, aspectId, paraId, links++));
                 } catch (JSONException e) {
                     e.printStackTrace();
                 }
             }
         }
-        return entitySet;
 
+        Map<String, Double> entityRanking = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : entityIndex.entrySet()) {
+            entityRanking.put(entry.getKey(), scores[entry.getValue()]);
+        }
+        return sortByValueDescending(entityRanking);
     }
 
 
     @NotNull
-    private Map<String, String> getEntityText(String queryStr,
+    private Map<String, String> getEntityText(@NotNull QueryContext context,
                                               @NotNull Set<String> entitySet,
-                                              Map<String, Set<ParaAspect>> entityToAspectMap,
-                                              Map<String, Double> entityRankingForQuery) {
+                                              @NotNull Map<String, Set<ParaAspect>> entityToAspectMap) {
         Map<String, String> entityToText = new HashMap<>();
+        Map<String, Double> entityRankingForQuery = context.entityRanking;
 
         try {
 
             for (String entityId : entitySet) {
                 if (entityToAspectMap.containsKey(entityId) && entityRankingForQuery.containsKey(entityId)) {
-                    String data = getDataForEntity(queryStr, entityToAspectMap.get(entityId), entityRankingForQuery.get(entityId));
+                    long start = System.nanoTime();
+                    String data = getDataForEntity(context, entityToAspectMap.get(entityId), entityRankingForQuery.get(entityId));
                     if (!data.isEmpty()) {
                         entityToText.put(entityId, data);
                     }
+                    PAIR_LATENCY.record(System.nanoTime() - start);
                 }
             }
         } catch (NullPointerException e) {
@@ -419,12 +403,12 @@ public class AspectsInCandidateSet extends MakeEntityData {
         return entityToText;
     }
 
-    private String getDataForEntity(String queryStr,  @NotNull Set<ParaAspect> aspectSet, double entityScore) {
+    private String getDataForEntity(QueryContext context, @NotNull Set<ParaAspect> aspectSet, double entityScore) {
 
         // If there are more than one aspect of the entity found in the passage then we get the top ranked aspect of
         // the entity for the query
         if (aspectSet.size() > 1) {
-            return topAspectTextForQuery(queryStr, aspectSet, entityScore);
+            return topAspectTextForQuery(context, aspectSet, entityScore);
         }
 
         // Otherwise, there is only one aspect, so we grab that from the set
@@ -443,16 +427,11 @@ public class AspectsInCandidateSet extends MakeEntityData {
     }
 
     @NotNull
-    private String topAspectTextForQuery(String queryStr, Set<ParaAspect> aspectSet, double entityScore) {
-
-
-
-        // Now use the top-K passages to derive expansion terms for the query and convert it to a BooleanQuery
-        BooleanQuery booleanQuery = RankingHelper.toBooleanQuery(queryStr, topKDocs, stopWords);
+    private String topAspectTextForQuery(@NotNull QueryContext context, Set<ParaAspect> aspectSet, double entityScore) {
 
-        // Now get the top aspect for the query
+        // Get the top aspect for the query, expanded with the RM3 terms of the query's top-K passages
         // We score the aspects for the query using BM25
-        ParaAspect topAspect = getTopAspectForQuery(booleanQuery, aspectSet);
+        ParaAspect topAspect = getTopAspectForQuery(context.expandedQuery, aspectSet);
         if (topAspect == null) {
             return "";
         }
@@ -470,17 +449,53 @@ public class AspectsInCandidateSet extends MakeEntityData {
         Map<String, ParaAspect> paraAspectDocumentMap = new HashMap<>();
 
         for (ParaAspect paraAspect : aspectSet) {
-            paraAspectDocumentMap.put(paraAspect.getAspectDoc().get("Id"), paraAspect);
+            paraAspectDocumentMap.put(paraAspect.getAspectId(), paraAspect);
         }
 
         return paraAspectDocumentMap;
     }
 
+    /**
+     * Open the aspect term store given with -DaspectTerms=<file>, if any.
+     * @return AspectTermStore or null.
+     */
+
+    @Nullable
+    private static AspectTermStore openAspectTerms() {
+        String file = System.getProperty("aspectTerms");
+        if (file == null) {
+            return null;
+        }
+        try {
+            System.out.print("Loading aspect term store...");
+            AspectTermStore store = AspectTermStore.open(Paths.get(file));
+            System.out.println("[Done].");
+            return store;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     @Nullable
     private ParaAspect getTopAspectForQuery(BooleanQuery booleanQuery, Set<ParaAspect> paraAspectSet) {
         Map<String, ParaAspect> documentParaAspectMap = toDocParaAspectMap(paraAspectSet);
+
+        // Score the aspects with their precomputed term vectors if we can
+        if (aspectTerms != null) {
+            List<ParaAspect> aspectList = new ArrayList<>(paraAspectSet);
+            List<String> aspectIds = new ArrayList<>(aspectList.size());
+            for (ParaAspect paraAspect : aspectList) {
+                aspectIds.add(paraAspect.getAspectId());
+            }
+            Integer top = aspectTerms.top(booleanQuery, aspectIds);
+            if (top != null) {
+                return top < 0 ? null : documentParaAspectMap.get(aspectIds.get(top));
+            }
+        }
+
         List<Document> aspectDocs = toLuceneDoc(paraAspectSet);
-        List<RankingHelper.ScoredDocument> rankedDocList = RankingHelper.rankDocuments(booleanQuery, aspectDocs, 100);
+        List<RankingHelper.ScoredDocument> rankedDocList = RankingHelper.rankDocuments(booleanQuery, aspectDocs, 1);
         if (!rankedDocList.isEmpty()) {
             return documentParaAspectMap.get(rankedDocList.get(0).getDocId());
         } else {
@@ -492,59 +507,14 @@ public class AspectsInCandidateSet extends MakeEntityData {
     private List<Document> toLuceneDoc(@NotNull Set<ParaAspect> aspects) {
         List<Document> aspectList = new ArrayList<>();
         for (ParaAspect paraAspect : aspects) {
-            Document doc = paraAspect.getAspectDoc();
+            Document doc = new Document();
+            doc.add(new StringField("Id", paraAspect.getAspectId(), Field.Store.YES));
+            doc.add(new TextField("Text", paraAspect.getAspectText(), Field.Store.YES));
             aspectList.add(doc);
         }
         return aspectList;
     }
 
-    @NotNull
-    private Map<String, Set<ParaAspect>> getEntitiesFromPassages(@NotNull List<RankingHelper.ScoredDocument> paraList) {
-
-        Map<String, Set<ParaAspect>> queryEntities = new HashMap<>();
-
-        for (RankingHelper.ScoredDocument document : paraList) {
-            Document doc = document.getDocument();
-            String paraId = document.getDocId();
-            String[] annotations = doc.get("Entities").split("\n");
-            for (String annotation : annotations) {
-                if (!annotation.isEmpty()) {
-                    try {
-                        JSONObject jsonObject = new JSONObject(annotation);
-                        String aspectId = jsonObject.getString("aspect");
-                        String entityId = jsonObject.getString("linkPageId");
-                        Document aspectDoc = getAspectDocFromIndex(aspectId);
-                        if (aspectDoc != null) {
-                            Set<ParaAspect> aspectList = queryEntities.containsKey(entityId)
-                                    ? queryEntities.get(entityId)
-                                    : new HashSet<>();
-                            aspectList.add(new ParaAspect(aspectDoc, paraId));
-                            queryEntities.put(entityId, aspectList);
-                        }
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }
-
-        return queryEntities;
-    }
-
-    @Nullable
-    private Document getAspectDocFromIndex(String aspectId) {
-        try {
-            Document doc = LuceneHelper.searchIndex("Id", aspectId, catalogSearcher);
-            if (doc != null) {
-                return doc;
-
-            }
-        } catch (IOException | ParseException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
     public static void main(@NotNull String[] args) {
         String mode = args[0];
         if (mode.equals("train")) {
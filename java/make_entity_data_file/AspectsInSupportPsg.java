@@ -1,9 +1,8 @@
 package make_entity_data_file;
 
+import help.AspectCatalog;
 import help.LuceneHelper;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.IndexSearcher;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -21,7 +20,7 @@ import org.json.JSONObject;
  */
 public class AspectsInSupportPsg extends SupportPsg {
 
-    private final IndexSearcher catalogSearcher;
+    private final AspectCatalog catalog;
 
     public AspectsInSupportPsg(String paraIndex,
                                String catalogIndex,
@@ -36,7 +35,7 @@ public class AspectsInSupportPsg extends SupportPsg {
         super(paraIndex, entityPassageFile, entityRunFile, entityFile, queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
 
         System.out.print("Setting up catalog index...");
-        this.catalogSearcher = LuceneHelper.createSearcher(catalogIndex, "bm25");
+        this.catalog = new AspectCatalog(LuceneHelper.createSearcher(catalogIndex, "bm25"));
         System.out.println("[Done].");
 
     }
@@ -53,7 +52,7 @@ public class AspectsInSupportPsg extends SupportPsg {
         super(paraIndex, entityPassageFile, entityRunFile, queryIdToNameFile, entityIdToNameFile, stopWordsFile, parallel);
 
         System.out.print("Setting up catalog index...");
-        this.catalogSearcher = LuceneHelper.createSearcher(catalogIndex, "bm25");
+        this.catalog = new AspectCatalog(LuceneHelper.createSearcher(catalogIndex, "bm25"));
         System.out.println("[Done].");
 
     }
@@ -65,6 +64,7 @@ public class AspectsInSupportPsg extends SupportPsg {
 
         for (String entityId : candidateEntitySet) {
             if (entityRunMap.containsKey(queryId) && entityRunMap.get(queryId).containsKey(entityId)) {
+                long start = System.nanoTime();
                 try {
                     Document doc = getTopDocForEntity(queryId, entityId);
                     double entityScore = entityRunMap.get(queryId).get(entityId);
@@ -80,8 +80,8 @@ public class AspectsInSupportPsg extends SupportPsg {
                             // entityAspectId may be null if the entity is not found in the passage.
                             // entityAspectId may be empty if the entity is found in the passage but it has no associated aspect.
                             // This can happen because the entity aspect linker is not perfect and may not be able to aspect link all entities in the passage.
-                            String aspectText = idToText(entityAspectId, "Text", catalogSearcher);
-                            String data = aspectText.isEmpty()
+                            String aspectText = catalog.getText(entityAspectId);
+                            String data = aspectText == null || aspectText.isEmpty()
                                     ? ""
                                     : toJSONString(paraId, entityAspectId, aspectText, entityScore);
                             if (!data.isEmpty()) {
@@ -92,6 +92,7 @@ public class AspectsInSupportPsg extends SupportPsg {
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
+                PAIR_LATENCY.record(System.nanoTime() - start);
             }
         }
 
@@ -26,16 +26,14 @@ public class BM25Psg extends CandidatePsg {
                    String stopWordsFile,
                    @NotNull String mode,
                    boolean parallel) {
-        super(paraIndex, entityParaFile, queriesFile, entitiesFile, stopWordsFile,  parallel);
-
-        if (mode.equals("train")) {
-            System.out.print("Loading pos/neg entity file...");
-            entities = readEntityFile(entityFile);
-        } else {
-            System.out.print("Loading entity run...");
-            entityRunMap = readRunFile(entityFile);
-        }
-        System.out.println("[Done].");
+        super(paraIndex,
+                entityParaFile,
+                mode.equals("train") ? null : entityFile,
+                mode.equals("train") ? entityFile : null,
+                queriesFile,
+                entitiesFile,
+                stopWordsFile,
+                parallel);
     }
 
 
@@ -56,13 +54,10 @@ public class BM25Psg extends CandidatePsg {
             }
         }
         entityDataMap.put(queryId, res);
-        if (parallel) {
-            count.getAndIncrement();
-            System.out.println("Done: " + queryId + " ( " + count + "/" + total + " ).");
-        }
     }
 
     private void getEntityData(String queryId, String entityId, double entityScore, Map<String, String> res) {
+        long start = System.nanoTime();
         try {
             Document doc = getTopDocForEntity(queryId, entityId);
             if (doc != null) {
@@ -77,7 +72,12 @@ public class BM25Psg extends CandidatePsg {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        PAIR_LATENCY.record(System.nanoTime() - start);
+    }
 
+    @Override
+    protected int getRankDepth() {
+        return 1;
     }
 
     @Override
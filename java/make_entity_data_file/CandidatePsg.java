@@ -1,9 +1,19 @@
 package make_entity_data_file;
 
+import help.BatchedRanker;
+import help.HeapUsage;
+import help.JobSnapshot;
+import help.LatencyHistogram;
 import help.LuceneHelper;
+import help.Metrics;
+import help.ParagraphPrefetcher;
+import help.ParagraphTermStore;
+import help.PipelineEvents;
 import help.RankingHelper;
+import help.StringTable;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.JSONArray;
@@ -11,15 +21,62 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 
 public abstract class CandidatePsg extends MakeEntityData {
-    protected final Map<String, String> queryIdToNameMap;
-    protected final Map<String, String> entityIdToNameMap;
-    protected Map<String, String> entityParaMap;
+
+    /**
+     * If set (-DdemandLoad=true), the queries, entity names and entity to passage mappings are restricted to the
+     * queries and entities found in the entity run and entity file of the job.
+     */
+    protected static final boolean DEMAND_LOAD = Boolean.getBoolean("demandLoad");
+
+    /**
+     * If set (-DheapReport=true), the heap footprint, direct buffer usage and GC time of loading the job state are
+     * reported. Every measurement requests a full GC, so this is off by default.
+     */
+    protected static final boolean HEAP_REPORT = Boolean.getBoolean("heapReport");
+
+    /**
+     * If set (-Dsnapshot=path), the loaded tables, entity run and entity file are saved to this file after the first
+     * load and mapped from it by later runs with the same inputs.
+     */
+    protected static final String SNAPSHOT_FILE = System.getProperty("snapshot");
+
+    /**
+     * How the paragraphs of an entity are ranked for a query (-DrankingMode=local|batched|global, default local).
+     * LOCAL: build an in-memory index of the entity's paragraphs for every (query, entity) pair.
+     * BATCHED: build one in-memory index of the paragraphs of all candidate entities of a query (see BatchedRanker).
+     * GLOBAL: search the entity's paragraphs in the paragraph index itself, with the statistics of the whole index.
+     * Nothing is re-indexed, but the scores differ from LOCAL (see benchmark.RankingModeReport).
+     */
+    public enum RankingMode {
+        LOCAL,
+        BATCHED,
+        GLOBAL
+    }
+
+    private static final LatencyHistogram LOOKUP = Metrics.timer("lookup");
+    private static final LatencyHistogram DESCRIPTION = Metrics.timer("description");
+    private static final LongAdder PARAGRAPHS = Metrics.counter("paragraphs");
+    private static final LongAdder NO_RANKED_PARAGRAPHS = Metrics.counter("no_ranked_paragraphs");
+    private static final LongAdder MISSING_PARAGRAPHS = Metrics.counter("missing_paragraphs");
+    private static final LongAdder MISSING_ENTITIES = Metrics.counter("missing_entities");
+    private static final LongAdder MISSING_QUERIES = Metrics.counter("missing_queries");
+
+    protected final StringTable queryIdToNameMap;
+    protected final StringTable entityIdToNameMap;
+    protected StringTable entityParaMap;
     protected List<String> stopWords;
-    public Map<String, LinkedHashMap<String, Double>> entityRunMap = new HashMap<>();
+    protected RankingMode rankingMode = RankingMode.valueOf(System.getProperty("rankingMode", "local").toUpperCase());
+    private final ThreadLocal<BatchedRanker> queryBatch = new ThreadLocal<>();
+    private final ThreadLocal<ParagraphPrefetcher> queryPrefetcher = new ThreadLocal<>();
+    private volatile IndexSearcher rankingSearcher = null;
+    protected ParagraphTermStore paragraphTerms = null;
 
     public CandidatePsg(String index,
                         String entityParaFile,
@@ -28,62 +85,323 @@ public abstract class CandidatePsg extends MakeEntityData {
                         String stopWordsFile,
                         boolean parallel){
 
+        this(index, entityParaFile, null, null, queriesFile, entitiesFile, stopWordsFile, parallel);
+    }
+
+    /**
+     * Constructor.
+     * The entity run and the entity file (pos/neg entities or qrels) are loaded first so that, in demand loading
+     * mode, only the rows of the large TSV files which the job will actually read are kept.
+     * @param index Paragraph index.
+     * @param entityParaFile File containing mapping from entity_id --> List[passage_id]
+     * @param entityRunFile Entity run file (may be null).
+     * @param entityFile Positive/Negative entity file (may be null).
+     * @param queriesFile File containing mapping from query_id --> query_name
+     * @param entitiesFile File containing mapping from entity_id --> entity_name
+     * @param stopWordsFile File containing stop words.
+     * @param parallel Whether to do in parallel.
+     */
+
+    public CandidatePsg(String index,
+                        String entityParaFile,
+                        @Nullable String entityRunFile,
+                        @Nullable String entityFile,
+                        String queriesFile,
+                        String entitiesFile,
+                        String stopWordsFile,
+                        boolean parallel){
+
         super(index, parallel);
 
-        System.out.print("Loading queries file....");
-        queryIdToNameMap = readTsvFile(queriesFile);
-        System.out.println("[Done].");
+        // Measured before the inputs are submitted and after all of them are loaded. The paragraph index is already
+        // being opened by then, so its share of the figures is approximate.
+        HeapUsage before = HEAP_REPORT ? HeapUsage.measure() : null;
+
+        Future<List<String>> stopWordsFuture = startup.submit("stop words", () -> getStopWords(stopWordsFile));
+
+        JobSnapshot snapshot = null;
+        Long checksum = null;
+        if (SNAPSHOT_FILE != null) {
+            try {
+                checksum = JobSnapshot.checksum(
+                        Arrays.asList(entityParaFile, entityRunFile, entityFile, queriesFile, entitiesFile),
+                        "demandLoad=" + DEMAND_LOAD);
+                snapshot = JobSnapshot.restore(SNAPSHOT_FILE, checksum);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (snapshot != null) {
+            System.out.print("Restoring job state from snapshot " + SNAPSHOT_FILE + "...");
+            entityRunMap = snapshot.getRunMap();
+            entities = snapshot.getEntityMap();
+            queryIdToNameMap = snapshot.getTable(0);
+            entityIdToNameMap = snapshot.getTable(1);
+            entityParaMap = snapshot.getTable(2);
+            System.out.println("[Done].");
+        } else {
+            Future<Map<String, LinkedHashMap<String, Double>>> entityRunFuture = entityRunFile == null
+                    ? null
+                    : startup.submit("entity run", () -> readRunFile(entityRunFile));
+            Future<Map<String, Set<String>>> entitiesFuture = entityFile == null
+                    ? null
+                    : startup.submit("entity file", () -> readEntityFile(entityFile));
+
+            // Without demand loading the tables do not depend on the run or entity file, so load everything at once
+            boolean demandLoad = DEMAND_LOAD && (entityRunFile != null || entityFile != null);
+            Future<StringTable> queriesFuture = null, entityNamesFuture = null, entityParaFuture = null;
+            if (!demandLoad) {
+                queriesFuture = startup.submit("queries file", () -> readStringTable(queriesFile, null));
+                entityNamesFuture = startup.submit("entities file", () -> readStringTable(entitiesFile, null));
+                entityParaFuture = startup.submit("entity to passage mappings", () -> readStringTable(entityParaFile, null));
+            }
+
+            if (entityRunFuture != null) {
+                entityRunMap = startup.get(entityRunFuture);
+            }
+            if (entitiesFuture != null) {
+                entities = startup.get(entitiesFuture);
+            }
+
+            if (demandLoad) {
+                Set<String> queryIds = getJobQueryIds();
+                Set<String> entityIds = getJobEntityIds();
+                System.out.println("Demand loading for " + queryIds.size() + " queries and " + entityIds.size() + " entities.");
+                queriesFuture = startup.submit("queries file", () -> readStringTable(queriesFile, queryIds));
+                entityNamesFuture = startup.submit("entities file", () -> readStringTable(entitiesFile, entityIds));
+                entityParaFuture = startup.submit("entity to passage mappings", () -> readStringTable(entityParaFile, entityIds));
+            }
+
+            queryIdToNameMap = startup.get(queriesFuture);
+            entityIdToNameMap = startup.get(entityNamesFuture);
+            entityParaMap = startup.get(entityParaFuture);
 
-        System.out.print("Loading entities file....");
-        entityIdToNameMap = readTsvFile(entitiesFile);
-        System.out.println("[Done].");
+            if (checksum != null) {
+                System.out.print("Writing snapshot " + SNAPSHOT_FILE + "...");
+                JobSnapshot.write(SNAPSHOT_FILE, checksum,
+                        Arrays.asList(queryIdToNameMap, entityIdToNameMap, entityParaMap), entityRunMap, entities);
+                System.out.println("[Done].");
+            }
+        }
 
-        System.out.print("Loading entity to passage mappings...");
-        entityParaMap = readTsvFile(entityParaFile);
-        System.out.println("[Done].");
+        stopWords = startup.get(stopWordsFuture);
+        paragraphTerms = openParagraphTerms(stopWords);
+        finishStartup();
 
-        System.out.print("Loading stop words...");
-        stopWords = getStopWords(stopWordsFile);
-        System.out.println("[Done].");
+        if (before != null) {
+            System.out.println((OFF_HEAP ? "Off-heap" : "On-heap") + " job state and paragraph index loaded. "
+                    + HeapUsage.measure().since(before));
+        }
+    }
+
+    /**
+     * Open the paragraph term store given with -DparagraphTerms=<file>, if any (see ProjectMain build ParagraphTerms).
+     * @param stopWords Stop words of the job.
+     * @return ParagraphTermStore or null.
+     */
+
+    @Nullable
+    private static ParagraphTermStore openParagraphTerms(@NotNull List<String> stopWords) {
+        String file = System.getProperty("paragraphTerms");
+        if (file == null) {
+            return null;
+        }
+        try {
+            System.out.print("Loading paragraph term store...");
+            ParagraphTermStore store = ParagraphTermStore.open(Paths.get(file), stopWords);
+            System.out.println("[Done].");
+            if (!store.hasFeedbackTerms()) {
+                System.err.println("WARNING: The paragraph term store was built with other stop words. Paragraphs are analyzed for RM3.");
+            }
+            return store;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Get the queries that appear in the entity run or the entity file of the job.
+     * @return Set of query ids.
+     */
+
+    @NotNull
+    protected Set<String> getJobQueryIds() {
+        Set<String> queryIds = new HashSet<>(entityRunMap.keySet());
+        queryIds.addAll(entities.keySet());
+        return queryIds;
+    }
+
+    /**
+     * Get the entities that appear in the entity run or the entity file of the job.
+     * @return Set of entity ids.
+     */
+
+    @NotNull
+    protected Set<String> getJobEntityIds() {
+        Set<String> entityIds = new HashSet<>();
+        for (Map<String, Double> rankings : entityRunMap.values()) {
+            entityIds.addAll(rankings.keySet());
+        }
+        for (Set<String> entitySet : entities.values()) {
+            entityIds.addAll(entitySet);
+        }
+        return entityIds;
     }
 
 
     protected abstract void getEntityData(String queryId, @NotNull String mode);
 
+    public void setRankingMode(@NotNull RankingMode rankingMode) {
+        this.rankingMode = rankingMode;
+    }
+
+    @Override
+    protected void processQuery(String queryId, String mode) {
+        runWithQueryContext(queryIdToNameMap.get(queryId), getCandidateEntities(queryId, mode),
+                () -> super.processQuery(queryId, mode));
+    }
+
+    /**
+     * Get the candidate entities of a query.
+     * @param queryId Query
+     * @param mode train/dev/test
+     * @return Positive/negative entities in train mode, else the retrieved entities.
+     */
+
+    @NotNull
+    protected Set<String> getCandidateEntities(String queryId, @NotNull String mode) {
+        if (mode.equals("train")) {
+            Set<String> entitySet = entities.get(queryId);
+            return entitySet == null ? Collections.emptySet() : entitySet;
+        }
+        Map<String, Double> retEntityMap = entityRunMap.get(queryId);
+        return retEntityMap == null ? Collections.emptySet() : retEntityMap.keySet();
+    }
+
+    /**
+     * Run the task for a query on this thread, with the state shared by all entities of the query.
+     * In BATCHED ranking mode, the paragraphs of all candidate entities are indexed first. In LOCAL ranking mode with
+     * -Dprefetch=N, the paragraphs of the next N candidate entities are read ahead (see ParagraphPrefetcher).
+     * @param queryStr Query
+     * @param candidateEntitySet Candidate entities of the query, in the order in which they are processed.
+     * @param task Task
+     */
+
+    protected void runWithQueryContext(@Nullable String queryStr,
+                                       @NotNull Set<String> candidateEntitySet,
+                                       @NotNull Runnable task) {
+        if (queryStr == null || candidateEntitySet.isEmpty()) {
+            task.run();
+        } else if (rankingMode == RankingMode.BATCHED) {
+            Map<String, List<String>> entityParas = new LinkedHashMap<>();
+            for (String entityId : candidateEntitySet) {
+                List<String> paraList = getParaList(entityId);
+                if (paraList != null) {
+                    entityParas.put(entityId, paraList);
+                }
+            }
+            BatchedRanker batch = null;
+            try {
+                batch = new BatchedRanker(queryStr, entityParas, indexSearcher);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            queryBatch.set(batch);
+            try {
+                task.run();
+            } finally {
+                queryBatch.remove();
+                if (batch != null) {
+                    try {
+                        batch.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } else if (rankingMode == RankingMode.LOCAL && ParagraphPrefetcher.DEPTH > 0
+                && (paragraphTerms == null || !paragraphTerms.hasFeedbackTerms())) {
+            try (ParagraphPrefetcher prefetcher = new ParagraphPrefetcher(indexSearcher, candidateEntitySet,
+                    this::getParaList)) {
+                queryPrefetcher.set(prefetcher);
+                task.run();
+            } finally {
+                queryPrefetcher.remove();
+            }
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Get the paragraphs of an entity from the entity to passage mappings.
+     * @param entityId Entity
+     * @return List of passage ids, or null if the entity has none.
+     */
+
+    @Nullable
+    protected List<String> getParaList(String entityId) {
+        String paragraphs = entityParaMap.get(entityId);
+        if (paragraphs != null) {
+            try {
+                return JSONArrayToList(new JSONObject(paragraphs).getJSONArray("paragraphs"));
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
 
     @Nullable
     protected Document getTopDocForEntity(String queryId, String entityId) throws IOException {
 
-        if (queryIdToNameMap.containsKey(queryId)) {
-            if (entityIdToNameMap.containsKey(entityId)) {
-                if (entityParaMap.containsKey(entityId)) {
+        PipelineEvents.Pair event = new PipelineEvents.Pair();
+        event.start(queryId, entityId);
+        try {
+            long start = System.nanoTime();
+            if (queryIdToNameMap.containsKey(queryId)) {
+                if (entityIdToNameMap.containsKey(entityId)) {
+                    if (entityParaMap.containsKey(entityId)) {
 
-                    String queryStr = queryIdToNameMap.get(queryId);
-                    String entityStr = entityIdToNameMap.get(entityId);
-                    try {
-                        List<String> paraList = JSONArrayToList(new JSONObject(entityParaMap.get(entityId))
-                                .getJSONArray("paragraphs"));
-                        // Rank these paragraphs for the query
-                        List<RankingHelper.ScoredDocument> rankedParaList = rankParasForQuery(queryStr, entityStr, paraList);
-
-                        if (!rankedParaList.isEmpty()) {
-                            return getEntityDescription(queryId, entityId, rankedParaList);
-                        } else {
-                            System.err.println("No ranked paragraphs found for entity: " + entityId);
+                        String queryStr = queryIdToNameMap.get(queryId);
+                        String entityStr = entityIdToNameMap.get(entityId);
+                        try {
+                            List<String> paraList = JSONArrayToList(new JSONObject(entityParaMap.get(entityId))
+                                    .getJSONArray("paragraphs"));
+                            LOOKUP.record(System.nanoTime() - start);
+                            PARAGRAPHS.add(paraList.size());
+                            event.paragraphs = paraList.size();
+
+                            // Rank these paragraphs for the query
+                            List<RankingHelper.ScoredDocument> rankedParaList = rankParas(queryStr, entityId, entityStr, paraList);
+
+                            if (!rankedParaList.isEmpty()) {
+                                long ranked = System.nanoTime();
+                                Document doc = getEntityDescription(queryId, entityId, rankedParaList);
+                                DESCRIPTION.record(System.nanoTime() - ranked);
+                                return doc;
+                            } else {
+                                NO_RANKED_PARAGRAPHS.increment();
+                            }
+                        } catch (JSONException e) {
+                            e.printStackTrace();
                         }
-                    } catch (JSONException e) {
-                        e.printStackTrace();
+                    } else {
+                        MISSING_PARAGRAPHS.increment();
                     }
                 } else {
-                    System.out.println("No paragraphs found for entity: " + entityId);
+                    MISSING_ENTITIES.increment();
                 }
             } else {
-                System.out.println("Entity not found: " + entityId);
+                MISSING_QUERIES.increment();
             }
-        } else {
-            System.out.println("Query not found: " + queryId);
+            return null;
+        } finally {
+            event.finish();
         }
-        return null;
     }
 
     protected abstract Document getEntityDescription(String queryId, String entityId, List<RankingHelper.ScoredDocument> rankedParaList);
@@ -101,6 +419,65 @@ public abstract class CandidatePsg extends MakeEntityData {
         return result;
     }
 
+    /**
+     * Rank the paragraphs of an entity for a query, using the batch of the current query if there is one.
+     * @param queryStr Query
+     * @param entityId Entity
+     * @param entityStr Name of the entity
+     * @param paraList Paragraphs of the entity
+     * @return Ranked paragraphs.
+     */
+
+    @NotNull
+    protected List<RankingHelper.ScoredDocument> rankParas(String queryStr,
+                                                           String entityId,
+                                                           String entityStr,
+                                                           List<String> paraList) {
+        RankingHelper.RankedDocuments ranked;
+        BatchedRanker batch = queryBatch.get();
+        if (batch != null && batch.contains(entityId)) {
+            ranked = batch.rankWithPRF(entityId, entityStr, stopWords, getRankDepth(), paragraphTerms);
+        } else if (rankingMode == RankingMode.GLOBAL) {
+            ranked = RankingHelper.rankWithPRF(queryStr, entityStr, paraList, getRankingSearcher(), stopWords,
+                    getRankDepth(), paragraphTerms);
+        } else {
+            // The term store ranks without analyzing the paragraphs; it gives up if it cannot reproduce the ranking
+            ranked = paragraphTerms == null
+                    ? null
+                    : paragraphTerms.rankWithPRF(queryStr, entityStr, paraList, indexSearcher, getRankDepth());
+            if (ranked != null) {
+                return ranked.toScoredDocuments();
+            }
+            ParagraphPrefetcher prefetcher = queryPrefetcher.get();
+            List<Document> luceneDocList = prefetcher == null ? null : prefetcher.take(entityId);
+            return luceneDocList == null
+                    ? rankParasForQuery(queryStr, entityStr, paraList)
+                    : rankDocsForQuery(queryStr, entityStr, luceneDocList);
+        }
+        return ranked == null ? new ArrayList<>() : ranked.toScoredDocuments();
+    }
+
+    /**
+     * Searcher over the paragraph index with the similarity used to rank paragraphs (GLOBAL ranking mode).
+     * @return IndexSearcher
+     */
+
+    @NotNull
+    protected IndexSearcher getRankingSearcher() {
+        IndexSearcher searcher = rankingSearcher;
+        if (searcher == null) {
+            synchronized (this) {
+                searcher = rankingSearcher;
+                if (searcher == null) {
+                    searcher = new IndexSearcher(indexSearcher.getIndexReader());
+                    searcher.setSimilarity(new LMJelinekMercerSimilarity(0.4f));
+                    rankingSearcher = searcher;
+                }
+            }
+        }
+        return searcher;
+    }
+
     @NotNull
     protected List<RankingHelper.ScoredDocument> rankParasForQuery(String queryStr,
                                                                    String entityStr,
@@ -109,6 +486,14 @@ public abstract class CandidatePsg extends MakeEntityData {
         // Get the Lucene documents
         List<Document> luceneDocList = LuceneHelper.toLuceneDocList(paraList, indexSearcher);
 
+        return rankDocsForQuery(queryStr, entityStr, luceneDocList);
+    }
+
+    @NotNull
+    protected List<RankingHelper.ScoredDocument> rankDocsForQuery(String queryStr,
+                                                                  String entityStr,
+                                                                  List<Document> luceneDocList) {
+
         // Convert to BooleanQuery
         BooleanQuery booleanQuery = RankingHelper.toBooleanQueryWithPRF(
                 queryStr,
@@ -123,7 +508,17 @@ public abstract class CandidatePsg extends MakeEntityData {
             return new ArrayList<>();
         }
 
-        return RankingHelper.rankDocuments(booleanQuery, luceneDocList, 1000);
+        return RankingHelper.rankDocuments(booleanQuery, luceneDocList, getRankDepth());
+    }
+
+    /**
+     * Number of ranked paragraphs that getEntityDescription() needs. Only these are scored and returned, and their
+     * stored fields are only read when used.
+     * @return Rank depth.
+     */
+
+    protected int getRankDepth() {
+        return 1000;
     }
 
 }
@@ -1,7 +1,11 @@
 package make_entity_data_file;
+import help.EntityTextStore;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -13,7 +17,7 @@ import java.util.Set;
 
 public class LeadText extends MakeEntityData {
 
-    public Map<String, LinkedHashMap<String, Double>> entityRunMap = new HashMap<>();
+    private final EntityTextStore leadTextStore;
 
     public LeadText(String index,
                     String entityFile,
@@ -23,13 +27,12 @@ public class LeadText extends MakeEntityData {
         super(index, parallel);
 
         if (mode.equals("train")) {
-            System.out.print("Loading entity file...");
-            entities = readEntityFile(entityFile);
+            entities = startup.get(startup.submit("entity file", () -> readEntityFile(entityFile)));
         } else {
-            System.out.print("Loading entity run...");
-            entityRunMap = readRunFile(entityFile);
+            entityRunMap = startup.get(startup.submit("entity run", () -> readRunFile(entityFile)));
         }
-        System.out.println("[Done].");
+        leadTextStore = openLeadTextStore();
+        finishStartup();
     }
 
     @Override
@@ -49,21 +52,49 @@ public class LeadText extends MakeEntityData {
             }
         }
         entityDataMap.put(queryId, res);
-        if (parallel) {
-            count.getAndIncrement();
-            System.out.println("Done: " + queryId + " ( " + count + "/" + total + " ).");
+    }
+
+    /**
+     * Open the lead text store given with -DleadTextStore=<file>, if any (see ProjectMain build LeadText).
+     * @return EntityTextStore or null.
+     */
+
+    @Nullable
+    private static EntityTextStore openLeadTextStore() {
+        String file = System.getProperty("leadTextStore");
+        if (file == null) {
+            return null;
+        }
+        try {
+            System.out.print("Loading lead text store...");
+            EntityTextStore store = EntityTextStore.open(Paths.get(file));
+            System.out.println("[Done].");
+            return store;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
     protected void getEntityData(String entityId, double entityScore, Map<String, String> res) {
 
-        String leadText = idToText(entityId, "LeadText", indexSearcher);
+        long start = System.nanoTime();
+        String leadText;
+        if (leadTextStore != null) {
+            leadText = leadTextStore.get(entityId);
+            if (leadText == null) {
+                leadText = "";
+            }
+        } else {
+            leadText = idToText(entityId, "LeadText", indexSearcher);
+        }
         String data = leadText.isEmpty()
                 ? ""
                 : toJSONString(" ", " ", leadText, entityScore);
         if (! data.isEmpty()) {
             res.put(entityId, data);
         }
+        PAIR_LATENCY.record(System.nanoTime() - start);
     }
 
     public static void main(@NotNull String[] args) {
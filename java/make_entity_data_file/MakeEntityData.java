@@ -1,18 +1,29 @@
 package make_entity_data_file;
 
+import help.FilteredTsvReader;
+import help.LatencyHistogram;
 import help.LuceneHelper;
+import help.Metrics;
+import help.PipelineEvents;
+import help.ProgressReporter;
+import help.OffHeapStringTable;
+import help.StartupLoader;
+import help.StringTable;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.IndexSearcher;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -21,40 +32,66 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @version 8/30/2021
  */
 abstract public class MakeEntityData {
-    protected final IndexSearcher indexSearcher;
+
+    /**
+     * If set (-DoffHeap=true), the large String tables read with readStringTable are kept outside the heap.
+     */
+    protected static final boolean OFF_HEAP = Boolean.getBoolean("offHeap");
+
+    protected IndexSearcher indexSearcher;
     protected int total = 0;
     public Map<String, Set<String>> entities = new HashMap<>();
+    public Map<String, LinkedHashMap<String, Double>> entityRunMap = new HashMap<>();
     protected AtomicInteger count = new AtomicInteger(0);
     protected boolean parallel;
 
     public  final Map<String, Map<String, String>> entityDataMap = new HashMap<>();
 
-    public MakeEntityData(String paraIndex, String entityFile, boolean parallel) {
-
-        this.parallel = parallel;
+    /**
+     * Time taken to make the data for each (query, entity) pair, across all jobs in this JVM.
+     */
+    public static final LatencyHistogram PAIR_LATENCY = Metrics.timer("pair");
+    protected static final LatencyHistogram OUTPUT = Metrics.timer("output");
+    protected static final LongAdder QUERIES = Metrics.counter("queries");
 
-        System.out.print("Setting up paragraph index...");
-        this.indexSearcher = LuceneHelper.createSearcher(paraIndex, "bm25");
-        System.out.println("[Done].");
+    /**
+     * Loads the inputs of the job concurrently. Subclass constructors submit their own inputs to it and must call
+     * finishStartup() before the paragraph index or the entity file are used.
+     */
+    protected final StartupLoader startup = new StartupLoader();
+    private final Future<IndexSearcher> indexSearcherFuture;
+    private Future<Map<String, Set<String>>> entitiesFuture = null;
 
-        System.out.print("Loading entity file...");
-        entities = readEntityFile(entityFile);
-        System.out.println("[Done].");
+    public MakeEntityData(String paraIndex, String entityFile, boolean parallel) {
 
+        this.parallel = parallel;
 
+        indexSearcherFuture = startup.submit("paragraph index", () -> LuceneHelper.createSearcher(paraIndex, "bm25"));
+        entitiesFuture = startup.submit("entity file", () -> readEntityFile(entityFile));
     }
 
     public MakeEntityData(String paraIndex, boolean parallel) {
 
         this.parallel = parallel;
 
-        System.out.print("Setting up paragraph index...");
-        this.indexSearcher = LuceneHelper.createSearcher(paraIndex, "bm25");
-        System.out.println("[Done].");
+        indexSearcherFuture = startup.submit("paragraph index", () -> LuceneHelper.createSearcher(paraIndex, "bm25"));
+    }
+
+    /**
+     * Wait for the paragraph index (and the entity file, if any) to be loaded and stop the startup loader.
+     */
+
+    protected void finishStartup() {
+        indexSearcher = startup.get(indexSearcherFuture);
+        if (entitiesFuture != null) {
+            entities = startup.get(entitiesFuture);
+        }
+        startup.shutdown();
     }
 
     public void doTask(@NotNull Set<String> querySet, String mode) {
         total = querySet.size();
+        Metrics.start();
 
         if (parallel) {
             System.out.println("Using Parallel Streams.");
@@ -69,20 +106,54 @@ abstract public class MakeEntityData {
                         "to set the number of threads used");
             }
             // Do in parallel
-            querySet.parallelStream().forEach(queryId -> getEntityData(queryId, mode));
+            ProgressReporter progress = new ProgressReporter(querySet.size(),
+                    querySet.stream().mapToLong(q -> getTaskCost(q, mode)).sum());
+            querySet.parallelStream().forEach(queryId -> {
+                processQuery(queryId, mode);
+                QUERIES.increment();
+                progress.taskDone(getTaskCost(queryId, mode));
+            });
+            progress.close();
         } else {
             System.out.println("Using Sequential Streams.");
 
             // Do in serial
             ProgressBar pb = new ProgressBar("Progress", querySet.size());
             for (String q : querySet) {
-                getEntityData(q, mode);
+                processQuery(q, mode);
+                QUERIES.increment();
                 pb.step();
             }
             pb.close();
         }
     }
 
+    /**
+     * Do the task for one query. Subclasses can override this to set up state shared by all entities of the query.
+     * @param queryId Query
+     * @param mode train/dev/test
+     */
+
+    protected void processQuery(String queryId, String mode) {
+        getEntityData(queryId, mode);
+    }
+
+    /**
+     * Relative cost of the task for a query, used to weight the ETA of parallel runs.
+     * @param queryId Query
+     * @param mode train/dev/test
+     * @return Number of entities of the query in the entity file (train) or in the entity run, or 1 if it has none.
+     */
+
+    protected long getTaskCost(String queryId, String mode) {
+        if (mode.equals("train")) {
+            Set<String> entitySet = entities.get(queryId);
+            return entitySet == null ? 1 : Math.max(1, entitySet.size());
+        }
+        Map<String, Double> retEntityMap = entityRunMap.get(queryId);
+        return retEntityMap == null ? 1 : Math.max(1, retEntityMap.size());
+    }
+
     @NotNull
     public Map<String, Set<String>> readEntityFile(String entityFile) {
         Map<String, Set<String>> entityFileMap = new HashMap<>();
@@ -163,6 +234,10 @@ abstract public class MakeEntityData {
      */
 
     public void writeToFile(String outFile, @NotNull Map<String, Map<String, String>> entityToTextMap) {
+        long start = System.nanoTime();
+        PipelineEvents.Output event = new PipelineEvents.Output();
+        event.begin();
+        int lines = 0;
         BufferedWriter out = null;
         try {
             out = new BufferedWriter(new FileWriter(outFile,true));
@@ -173,6 +248,7 @@ abstract public class MakeEntityData {
                     String entityText = entityMap.get(entityId);
                     out.write(queryId + "\t" + entityId + "\t" + entityText);
                     out.newLine();
+                    lines++;
                 }
             }
         } catch (IOException e) {
@@ -188,6 +264,12 @@ abstract public class MakeEntityData {
                 e.printStackTrace();
             }
         }
+        OUTPUT.record(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.file = outFile;
+            event.lines = lines;
+            event.commit();
+        }
     }
 
     /**
@@ -278,6 +360,37 @@ abstract public class MakeEntityData {
     }
 
 
+    /**
+     * Read only the rows of a TSV file whose key is in the given set.
+     * The file is scanned in parallel chunks and the other rows are never decoded.
+     * @param file Path to file.
+     * @param keys Keys to keep.
+     * @return Map representation of the matching rows of the file.
+     */
+
+    @NotNull
+    protected Map<String, String> readTsvFile(String file, @NotNull Set<String> keys) {
+        return FilteredTsvReader.read(file, keys);
+    }
+
+
+    /**
+     * Read a TSV file into a StringTable.
+     * The table is off-heap if -DoffHeap=true is set, otherwise it is backed by a HashMap.
+     * @param file Path to file.
+     * @param keys Keys to keep. If null, all rows are kept.
+     * @return StringTable representation of the file.
+     */
+
+    @NotNull
+    protected StringTable readStringTable(String file, @Nullable Set<String> keys) {
+        if (OFF_HEAP) {
+            return OffHeapStringTable.build(FilteredTsvReader.read(file, keys, OffHeapStringTable.Builder::new));
+        }
+        return StringTable.onHeap(keys == null ? readTsvFile(file) : readTsvFile(file, keys));
+    }
+
+
     /**
      * Read file containing  a list of stop words.
      * @param stopWordsFilePath Path to stop words file.
@@ -1,9 +1,10 @@
 package make_entity_data_file;
 
-import help.LuceneHelper;
+import help.EcnKernel;
+import help.EntityCooccurrenceIndex;
+import help.Metrics;
 import help.RankingHelper;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.search.BooleanQuery;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -12,8 +13,10 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * We use the top support passage for an entity as the entity's description.
@@ -24,7 +27,11 @@ import java.util.*;
 
 public class SupportPsg extends CandidatePsg {
 
+    private static final LongAdder TARGET_ENTITY_MISSING = Metrics.counter("target_entity_missing");
+
     protected final DecimalFormat df;
+    private final ThreadLocal<EcnKernel> queryKernel = new ThreadLocal<>();
+    private final EntityCooccurrenceIndex cooccurrenceIndex = openCooccurrenceIndex();
 
     /**
      * Class to represent an Entity Context Document for an entity.
@@ -88,15 +95,8 @@ public class SupportPsg extends CandidatePsg {
                       String stopWordsFile,
                       boolean parallel) {
 
-        super(paraIndex, entityParaFile, queryIdToNameFile, entityIdToNameFile, stopWordsFile,  parallel);
-
-        System.out.print("Loading entity run...");
-        entityRunMap = readRunFile(entityRunFile);
-        System.out.println("[Done].");
-
-        System.out.print("Loading pos/neg entity file...");
-        entities = readEntityFile(posOrNegEntityFile);
-        System.out.println("[Done].");
+        super(paraIndex, entityParaFile, entityRunFile, posOrNegEntityFile, queryIdToNameFile, entityIdToNameFile,
+                stopWordsFile,  parallel);
 
         df = new DecimalFormat("#.####");
         df.setRoundingMode(RoundingMode.CEILING);
@@ -111,16 +111,12 @@ public class SupportPsg extends CandidatePsg {
                       String stopWordsFile,
                       boolean parallel) {
 
-        super(paraIndex, entityParaFile, queryIdToNameFile, entityIdToNameFile, stopWordsFile,  parallel);
+        super(paraIndex, entityParaFile, entityRunFile, null, queryIdToNameFile, entityIdToNameFile,
+                stopWordsFile,  parallel);
 
         df = new DecimalFormat("#.####");
         df.setRoundingMode(RoundingMode.CEILING);
 
-        System.out.print("Loading entity run...");
-        entityRunMap = readRunFile(entityRunFile);
-        System.out.println("[Done].");
-
-
     }
 
     @Override
@@ -145,10 +141,6 @@ public class SupportPsg extends CandidatePsg {
             }
             // Save
             entityDataMap.put(queryId, res);
-            if (parallel) {
-                count.getAndIncrement();
-                System.out.println("Done: " + queryId + " ( " + count + "/" + total + " ).");
-            }
         }
     }
 
@@ -158,6 +150,7 @@ public class SupportPsg extends CandidatePsg {
 
         for (String entityId : candidateEntitySet) {
             if (entityRunMap.containsKey(queryId) && entityRunMap.get(queryId).containsKey(entityId)) {
+                long start = System.nanoTime();
                 try {
                     Document doc = getTopDocForEntity(queryId, entityId);
                     double entityScore = entityRunMap.get(queryId).get(entityId);
@@ -173,6 +166,7 @@ public class SupportPsg extends CandidatePsg {
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
+                PAIR_LATENCY.record(System.nanoTime() - start);
             }
         }
 
@@ -184,38 +178,69 @@ public class SupportPsg extends CandidatePsg {
     @Override
     protected Document getEntityDescription(String queryId, String entityId, @NotNull List<RankingHelper.ScoredDocument> rankedParaList) {
 
-        Set<String> retEntitySet = entityRunMap.get(queryId).keySet();
-
-        // Create the ECD using the ranked paragraphs
-        EntityContextDocument d = createECD(entityId, rankedParaList);
-        if (d != null) {
-            List<String> contextEntityList = d.getEntityList();
-            Map<String, Double> freqDist = getDistribution(contextEntityList, retEntitySet);
-            freqDist.remove(entityId);
-            return getTopDocForEntity(d, freqDist);
-        }
-        return null;
+        // Create the ECD using the ranked paragraphs and score them, without the entity itself
+        EcnKernel kernel = getKernel(queryId);
+        kernel.score(entityId, rankedParaList, false);
+        return kernel.topDocument();
     }
 
-    @NotNull
-    protected List<RankingHelper.ScoredDocument> rankParasForQuery(String queryStr, String entityStr, List<String> paraList) {
-
-        // Get the Lucene documents
-        List<Document> luceneDocList = LuceneHelper.toLuceneDocList(paraList, indexSearcher);
+    /**
+     * Get the ECN kernel of a query, shared by all entities of the query on this thread.
+     * @param queryId Query
+     * @return EcnKernel
+     */
 
-        // Convert to BooleanQuery
-        BooleanQuery booleanQuery = RankingHelper.toBooleanQueryWithPRF(queryStr, entityStr, luceneDocList, stopWords);
+    @NotNull
+    protected EcnKernel getKernel(String queryId) {
+        EcnKernel kernel = queryKernel.get();
+        if (kernel == null || !kernel.getQueryId().equals(queryId)) {
+            Map<String, Double> retEntityMap = entityRunMap.get(queryId);
+            kernel = new EcnKernel(queryId, retEntityMap == null ? Collections.emptySet() : retEntityMap.keySet(),
+                    cooccurrenceIndex);
+            queryKernel.set(kernel);
+        }
+        return kernel;
+    }
 
-        // Rank the Lucene Documents using the BooleanQuery
+    /**
+     * Open the entity co-occurrence index given with -DcooccurrenceIndex=<file>, if any
+     * (see ProjectMain build EntityCooccurrence).
+     * @return EntityCooccurrenceIndex or null.
+     */
 
-        if (booleanQuery == null) {
-            return new ArrayList<>();
+    @Nullable
+    private static EntityCooccurrenceIndex openCooccurrenceIndex() {
+        String file = System.getProperty("cooccurrenceIndex");
+        if (file == null) {
+            return null;
         }
+        try {
+            System.out.print("Loading entity co-occurrence index...");
+            EntityCooccurrenceIndex index = EntityCooccurrenceIndex.open(Paths.get(file));
+            System.out.println("[Done].");
+            return index;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-        return RankingHelper.rankDocuments(booleanQuery, luceneDocList, 1000);
-
+    @Override
+    protected void runWithQueryContext(@Nullable String queryStr,
+                                       @NotNull Set<String> candidateEntitySet,
+                                       @NotNull Runnable task) {
+        try {
+            super.runWithQueryContext(queryStr, candidateEntitySet, task);
+        } finally {
+            queryKernel.remove();
+        }
     }
 
+    /*
+     * The methods below are the String based ECN implementation. The pipeline uses EcnKernel, which gives the same
+     * results; they are kept as its reference (see EntityDataBenchmark).
+     */
+
     @Nullable
     protected EntityContextDocument createECD(String entityId,
                                             @NotNull List<RankingHelper.ScoredDocument> paraList) {
@@ -232,7 +257,7 @@ public class SupportPsg extends CandidatePsg {
                 documentList.add(doc);
                 contextEntityList.addAll(entityList);
             } else{
-                System.out.println("Target entity not in document.");
+                TARGET_ENTITY_MISSING.increment();
             }
         }
 
@@ -302,28 +327,6 @@ public class SupportPsg extends CandidatePsg {
     }
 
 
-    private Document getTopDocForEntity(@NotNull EntityContextDocument d, Map<String, Double> freqMap) {
-
-        double topScore = 0.0d;
-        Document topDoc = null;
-
-        // Get the list of documents in the pseudo-document corresponding to the entity
-        List<Document> documents = d.getDocumentList();
-
-        // For every document do
-        for (Document doc : documents) {
-
-            // Get the score of the document
-            double score = getParaScore(doc, freqMap);
-
-            if (score > topScore) {
-                topScore = score;
-                topDoc = doc;
-            }
-        }
-        return topDoc;
-    }
-
     /**
      * Method to find the score of a paragraph.
      * This method looks at all the entities in the paragraph and calculates the score from them.